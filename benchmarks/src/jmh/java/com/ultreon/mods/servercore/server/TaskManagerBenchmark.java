@@ -0,0 +1,137 @@
+package com.ultreon.mods.servercore.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the timing wheel task manager with the scan based implementation it replaced.
+ * Every task reschedules itself when run, so the amount of pending tasks stays constant.
+ * The repeating variant schedules the same work as repeating tasks, which are put back in the wheel instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskManagerBenchmark {
+    private static final int MAX_DELAY = 6000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int pending;
+
+    private TaskManager wheel;
+    private TaskManager repeating;
+    private LegacyTaskManager legacy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0);
+        wheel = new TaskManager();
+        repeating = new TaskManager();
+        legacy = new LegacyTaskManager();
+        for (int i = 0; i < pending; i++) {
+            int delay = 1 + random.nextInt(MAX_DELAY);
+            new Repeating(delay) {
+                @Override
+                void schedule() {
+                    wheel.schedule(this, delay);
+                }
+            }.schedule();
+            new Repeating(delay) {
+                @Override
+                void schedule() {
+                    legacy.schedule(this, delay);
+                }
+            }.schedule();
+            repeating.scheduleRepeating(() -> {}, delay, delay);
+        }
+    }
+
+    @Benchmark
+    public void tickWheel() {
+        wheel.tick();
+    }
+
+    @Benchmark
+    public void tickRepeating() {
+        repeating.tick();
+    }
+
+    @Benchmark
+    public void tickLegacy() {
+        legacy.tick();
+    }
+
+    @Benchmark
+    public void scheduleCancelWheel() {
+        ScheduledTask task = wheel.schedule(() -> {}, MAX_DELAY);
+        wheel.cancelTask(task.token());
+    }
+
+    @Benchmark
+    public void scheduleCancelLegacy() {
+        UUID token = legacy.schedule(() -> {}, MAX_DELAY);
+        legacy.cancelTask(token);
+    }
+
+    private abstract static class Repeating implements Runnable {
+        final int delay;
+
+        Repeating(int delay) {
+            this.delay = delay;
+        }
+
+        abstract void schedule();
+
+        @Override
+        public void run() {
+            schedule();
+        }
+    }
+
+    /**
+     * The previous task manager, scanning every pending task each tick.
+     */
+    static final class LegacyTaskManager {
+        private final Map<UUID, LegacyTask> tasks = new ConcurrentHashMap<>();
+        private final Object lock = new Object();
+
+        void tick() {
+            synchronized (lock) {
+                tasks.values().stream().filter(LegacyTask::run).forEach(key -> tasks.remove(key.token));
+            }
+        }
+
+        UUID schedule(Runnable task, int afterTicks) {
+            synchronized (lock) {
+                UUID uuid = UUID.randomUUID();
+                tasks.put(uuid, new LegacyTask(uuid, afterTicks, task));
+                return uuid;
+            }
+        }
+
+        void cancelTask(UUID token) {
+            tasks.remove(token);
+        }
+    }
+
+    private static final class LegacyTask {
+        private final UUID token;
+        private final Runnable task;
+        private int remaining;
+
+        LegacyTask(UUID token, int delay, Runnable task) {
+            this.token = token;
+            this.remaining = delay;
+            this.task = task;
+        }
+
+        synchronized boolean run() {
+            if (remaining == 0) task.run();
+            return --remaining < 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ultreon.mods.servercore.server.chat;
+
+import net.minecraft.network.chat.TextColor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Color tag resolution over a corpus of color heavy messages.
+ * Compiling bypasses the template cache, so it measures the color lookups of the parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChatColorsBenchmark {
+    private static final int MESSAGES = 256;
+    private static final int TAGS = 16;
+
+    private String[] names;
+    private String[] messages;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0);
+        List<String> names = new ArrayList<>(ChatColors.names());
+        // Misses fall through to the hex parser.
+        names.add("#ff7f00");
+        names.add("#3495eb");
+        this.names = names.toArray(String[]::new);
+
+        messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = 0; j < TAGS; j++) {
+                builder.append('<').append(this.names[random.nextInt(this.names.length)]).append(">word ");
+            }
+            messages[i] = builder.toString();
+        }
+    }
+
+    @Benchmark
+    public TextColor lookup() {
+        String name = names[(index++ & Integer.MAX_VALUE) % names.length];
+        TextColor color = ChatColors.get(name);
+        return color != null ? color : TextColor.parseColor(name);
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) {
+        for (String message : messages) {
+            blackhole.consume(new ChatFormatter(message, 0).compile());
+        }
+    }
+
+    @Benchmark
+    public void format(Blackhole blackhole) {
+        ChatContext context = new ChatContext();
+        for (String message : messages) {
+            blackhole.consume(new ChatFormatter(message, context, false).format());
+        }
+    }
+}
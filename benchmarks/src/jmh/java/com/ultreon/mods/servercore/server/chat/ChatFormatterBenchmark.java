@@ -0,0 +1,63 @@
+package com.ultreon.mods.servercore.server.chat;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat formatting over corpora of everyday chat messages.
+ * Formatting hits the template cache, compiling measures the parser alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChatFormatterBenchmark {
+    private static final int MESSAGES = 1024;
+    private static final String[] WORDS = {"hey", "anyone", "got", "spare", "iron", "meet", "at", "spawn", "lol", "gg", "the", "base", "is", "north", "brb", "thanks"};
+    private static final String[] STYLES = {"<red>", "<gold>", "<aqua>", "**", "__", "&a", "&l", "<#3495eb>", "</>"};
+    private static final String[] KEYS = {"%username%", "%display-name%", "%rank-name%", "%pos%"};
+
+    @Param({"plain", "styled", "keyed"})
+    public String corpus;
+
+    private String[] messages;
+    private ChatContext context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0);
+        messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder builder = new StringBuilder();
+            int words = 3 + random.nextInt(12);
+            for (int j = 0; j < words; j++) {
+                if (!corpus.equals("plain") && random.nextInt(4) == 0) builder.append(STYLES[random.nextInt(STYLES.length)]);
+                if (corpus.equals("keyed") && random.nextInt(6) == 0) builder.append(KEYS[random.nextInt(KEYS.length)]).append(' ');
+                builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            messages[i] = builder.toString().trim();
+        }
+
+        context = new ChatContext()
+                .key("username", "Steve")
+                .key("display-name", "Steve")
+                .key("rank-name", "Default")
+                .key("pos", "x12, y64, z-340");
+    }
+
+    @Benchmark
+    public void format(Blackhole blackhole) {
+        for (String message : messages) {
+            blackhole.consume(new ChatFormatter(message, context, false).format());
+        }
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) {
+        for (String message : messages) {
+            blackhole.consume(new ChatFormatter(message, 0).compile());
+        }
+    }
+}
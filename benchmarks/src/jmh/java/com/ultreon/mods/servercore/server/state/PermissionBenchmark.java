@@ -0,0 +1,90 @@
+package com.ultreon.mods.servercore.server.state;
+
+import com.ultreon.mods.servercore.server.Permission;
+import com.ultreon.mods.servercore.server.Rank;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permission checks of a player, at varying amounts of ranks and permissions per rank.
+ * Runs against a state manager that isn't bound to a server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissionBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1", "8", "32"})
+    public int ranks;
+
+    @Param({"16", "256"})
+    public int permissions;
+
+    private ServerStateManager manager;
+    private ServerPlayerState state;
+    private Permission[] granted;
+    private Permission[] denied;
+    private String[] grantedIds;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File dir = Files.createTempDirectory("servercore-bench").toFile();
+        manager = new ServerStateManager(null, dir, Set.of(Permission.of("servercore.chat")));
+        state = new ServerPlayerState(UUID.randomUUID(), manager, new File(dir, "player"));
+
+        for (int i = 0; i < ranks; i++) {
+            Rank rank = new Rank("rank" + i, "Rank " + i, "&7[Rank " + i + "] ", i);
+            for (int j = 0; j < permissions; j++) {
+                rank.addPermission(permission(i, j));
+            }
+            manager.addRank(rank);
+            state.addRank(rank);
+        }
+
+        Random random = new Random(0);
+        granted = new Permission[LOOKUPS];
+        denied = new Permission[LOOKUPS];
+        grantedIds = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            // Looked up like checks do, so the denied permissions aren't interned.
+            granted[i] = Permission.lookup(permission(random.nextInt(ranks), random.nextInt(permissions)));
+            denied[i] = Permission.lookup("other.rank" + random.nextInt(ranks) + ".node" + random.nextInt(permissions));
+            grantedIds[i] = granted[i].id();
+        }
+        if (!state.hasPermission(granted[0])) throw new IllegalStateException("Granted permission isn't granted.");
+        if (state.hasPermission(denied[0])) throw new IllegalStateException("Denied permission is granted.");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.persistence().close();
+    }
+
+    @Benchmark
+    public boolean granted() {
+        return state.hasPermission(granted[index++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public boolean denied() {
+        return state.hasPermission(denied[index++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public boolean grantedById() {
+        return state.hasPermission(grantedIds[index++ & (LOOKUPS - 1)]);
+    }
+
+    private static String permission(int rank, int node) {
+        return "servercore.rank" + rank + ".node" + node;
+    }
+}
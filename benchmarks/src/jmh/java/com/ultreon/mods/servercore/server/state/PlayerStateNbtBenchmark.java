@@ -0,0 +1,81 @@
+package com.ultreon.mods.servercore.server.state;
+
+import com.ultreon.mods.servercore.server.Permission;
+import com.ultreon.mods.servercore.server.Rank;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and saving player states, at varying amounts of direct permissions.
+ * Saving snapshots on the calling thread, writing includes compressing and writing the file on the I/O thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlayerStateNbtBenchmark {
+    private static final int RANKS = 4;
+    private static final Permission TOGGLED = Permission.of("servercore.bench.toggled");
+
+    @Param({"0", "64", "1024"})
+    public int permissions;
+
+    private ServerStateManager manager;
+    private ServerPlayerState state;
+    private UUID uuid;
+    private File storageDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File dir = Files.createTempDirectory("servercore-bench").toFile();
+        manager = new ServerStateManager(null, dir, Set.of());
+        uuid = UUID.randomUUID();
+        storageDir = new File(dir, uuid.toString());
+        state = new ServerPlayerState(uuid, manager, storageDir);
+
+        for (int i = 0; i < RANKS; i++) {
+            Rank rank = new Rank("rank" + i, "Rank " + i, "&7[Rank " + i + "] ", i);
+            manager.addRank(rank);
+            state.addRank(rank);
+        }
+        for (int i = 0; i < permissions; i++) {
+            state.addPermission("servercore.bench.node" + i);
+        }
+        state.save();
+        manager.persistence().flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.persistence().close();
+    }
+
+    @Benchmark
+    public ServerPlayerState load() throws IOException {
+        return new ServerPlayerState(uuid, manager, storageDir);
+    }
+
+    @Benchmark
+    public void save() {
+        toggle();
+        state.save();
+    }
+
+    @Benchmark
+    public void saveAndWrite() {
+        toggle();
+        state.save();
+        manager.persistence().flush();
+    }
+
+    private void toggle() {
+        // Saving is skipped for unchanged states.
+        if (state.hasPermission(TOGGLED)) state.removePermission(TOGGLED);
+        else state.addPermission(TOGGLED);
+    }
+}
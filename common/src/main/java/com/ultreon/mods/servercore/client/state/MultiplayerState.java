@@ -1,5 +1,6 @@
 package com.ultreon.mods.servercore.client.state;
 
+import com.ultreon.mods.servercore.network.PermissionDelta;
 import com.ultreon.mods.servercore.server.Permission;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.nbt.CompoundTag;
@@ -22,6 +23,7 @@ import static com.ultreon.mods.servercore.network.StateSync.*;
 public class MultiplayerState extends ClientState {
     private LocalPlayer player;
     private final Set<Permission> permissions = new HashSet<>();
+    private final PermissionDelta.Decoder permissionDecoder = new PermissionDelta.Decoder();
 
     /**
      * Create the multiplayer state for the client-side player.
@@ -65,25 +67,27 @@ public class MultiplayerState extends ClientState {
         if (type.equals(SET_PERMISSION)) {
             String id = data.getString("permission");
             boolean allow = data.getBoolean("allow");
-            if (allow) permissions.add(new Permission(id));
-            else permissions.remove(new Permission(id));
+            if (allow) permissions.add(Permission.of(id));
+            else permissions.remove(Permission.lookup(id));
         } else if (type.equals(SET_MULTI_PERMISSIONS)) {
             System.out.println("data = " + data);
             boolean allow = data.getBoolean("allow");
             ListTag permissions = data.getList("Permissions", Tag.TAG_STRING);
             permissions.forEach(tag -> {
                 if (tag instanceof StringTag s) {
-                    if (allow) this.permissions.add(new Permission(s.getAsString()));
-                    else this.permissions.remove(new Permission(s.getAsString()));
+                    if (allow) this.permissions.add(Permission.of(s.getAsString()));
+                    else this.permissions.remove(Permission.lookup(s.getAsString()));
                 }
             });
+        } else if (type.equals(PERMISSION_DELTA)) {
+            permissionDecoder.apply(data, this.permissions);
         } else if (type.equals(INIT_PERMISSIONS)) {
             System.out.println("data = " + data);
             ListTag permissions = data.getList("Permissions", Tag.TAG_STRING);
             this.permissions.clear();
             permissions.forEach(tag -> {
                 if (tag instanceof StringTag s) {
-                    this.permissions.add(new Permission(s.getAsString()));
+                    this.permissions.add(Permission.of(s.getAsString()));
                 }
             });
         }
@@ -127,7 +131,7 @@ public class MultiplayerState extends ClientState {
      * @since 0.1.0
      */
     public boolean hasPermission(String permission) {
-        return hasPermission(new Permission(permission));
+        return hasPermission(Permission.lookup(permission));
     }
 
     /**
@@ -138,7 +142,10 @@ public class MultiplayerState extends ClientState {
      * @since 0.1.0
      */
     public boolean hasPermission(Permission permission) {
-        return permissions.stream().anyMatch(perm -> perm.isChild(permission) || perm.equals(permission));
+        for (Permission perm : permissions) {
+            if (perm.isChild(permission)) return true;
+        }
+        return false;
     }
 
     /**
@@ -1,6 +1,9 @@
 package com.ultreon.mods.servercore.mixin.common;
 
+import com.ultreon.mods.servercore.server.ServerEvents;
+import com.ultreon.mods.servercore.server.config.Config;
 import com.ultreon.mods.servercore.server.state.ServerStateManager;
+import net.minecraft.network.chat.ChatDecorator;
 import net.minecraft.server.MinecraftServer;
 import org.jetbrains.annotations.ApiStatus;
 import org.spongepowered.asm.mixin.Mixin;
@@ -34,4 +37,18 @@ public abstract class MinecraftServerMixin {
         Objects.requireNonNull(manager, "Server state manager is unloaded when saving local data.");
         manager.saveLocal();
     }
+
+    /**
+     * Chat decorator injection, formats chat off the server thread when async chat is enabled.
+     *
+     * @param cir callback info.
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    @Inject(at = @At("RETURN"), method = "getChatDecorator", cancellable = true)
+    public void getChatDecorator(CallbackInfoReturnable<ChatDecorator> cir) {
+        ServerEvents events = ServerEvents.get();
+        if (events == null || !Config.isAsyncChat()) return;
+        cir.setReturnValue(events.asyncChatDecorator(cir.getReturnValue()));
+    }
 }
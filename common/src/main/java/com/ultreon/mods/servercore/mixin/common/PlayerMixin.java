@@ -2,6 +2,7 @@ package com.ultreon.mods.servercore.mixin.common;
 
 import com.ultreon.mods.servercore.server.chat.ChatContext;
 import com.ultreon.mods.servercore.server.chat.ChatFormatter;
+import com.ultreon.mods.servercore.server.chat.ChatTemplate;
 import com.ultreon.mods.servercore.server.teleport.*;
 import net.minecraft.CrashReport;
 import net.minecraft.client.Minecraft;
@@ -14,7 +15,7 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 @SuppressWarnings("ConstantConditions")
 @Mixin(Entity.class)
@@ -65,12 +66,12 @@ public abstract class PlayerMixin implements PlayerTeleports {
     private static final String GOT_ACCEPTED = """
             <mc:gold>The teleport request sent to </>%recipient-name%<mc:gold> got <mc:green>accepted<mc:gold>.""";
 
-    private static final Set<UUID> ACTIVE_TELEPORTS = new CopyOnWriteArraySet<>();
+    private static final AtomicLong TELEPORT_IDS = new AtomicLong();
     private final Object lock = new Object();
 
     // Direct teleports
     private Teleport<?> currentTeleport = null;
-    private UUID currentTeleportId;
+    private long currentTeleportId;
 
     // Teleport requests.
     private final Map<UUID, TeleportRequest> sentRequests = new HashMap<>();
@@ -95,8 +96,8 @@ public abstract class PlayerMixin implements PlayerTeleports {
         TeleportManager.registerRequest(request);
         request.startTimer();
 
-        ChatFormatter formatter = new ChatFormatter(INBOUND_SENT, request.getMessageContext());
-        sendSystemMessage(formatter.format().output());
+        ChatFormatter.Results formatted = ChatTemplate.compile(INBOUND_SENT).render(request.getMessageContext());
+        sendSystemMessage(formatted.output());
     }
 
     @Override
@@ -115,22 +116,22 @@ public abstract class PlayerMixin implements PlayerTeleports {
         TeleportManager.registerRequest(request);
         request.startTimer();
 
-        ChatFormatter formatter = new ChatFormatter(OUTBOUND_SENT, request.getMessageContext());
-        sendSystemMessage(formatter.format().output());
+        ChatFormatter.Results formatted = ChatTemplate.compile(OUTBOUND_SENT).render(request.getMessageContext());
+        sendSystemMessage(formatted.output());
     }
 
     private void timeOut(TeleportRequest request) {
         ChatContext messageContext = request.getMessageContext();
         {
-            ChatFormatter formatter = new ChatFormatter(GOT_TIMED_OUT, messageContext);
-            sendSystemMessage(formatter.format().output());
+            ChatFormatter.Results formatted = ChatTemplate.compile(GOT_TIMED_OUT).render(messageContext);
+            sendSystemMessage(formatted.output());
         }
 
         if (request instanceof EntityRecipient<?> r) {
-            ChatFormatter formatter = new ChatFormatter(TIMED_OUT, messageContext);
+            ChatFormatter.Results formatted = ChatTemplate.compile(TIMED_OUT).render(messageContext);
             Entity recipient = r.recipient();
             if (recipient != null) {
-                recipient.sendSystemMessage(formatter.format().output());
+                recipient.sendSystemMessage(formatted.output());
             }
         }
     }
@@ -138,15 +139,15 @@ public abstract class PlayerMixin implements PlayerTeleports {
     private void doDeny(TeleportRequest request) {
         ChatContext messageContext = request.getMessageContext();
         {
-            ChatFormatter formatter = new ChatFormatter(GOT_DENIED, messageContext);
-            sendSystemMessage(formatter.format().output());
+            ChatFormatter.Results formatted = ChatTemplate.compile(GOT_DENIED).render(messageContext);
+            sendSystemMessage(formatted.output());
         }
 
         if (request.recipient() instanceof EntityRecipient<?> r) {
-            ChatFormatter formatter = new ChatFormatter(DENIED, messageContext);
+            ChatFormatter.Results formatted = ChatTemplate.compile(DENIED).render(messageContext);
             Entity recipient = r.recipient();
             if (recipient != null) {
-                recipient.sendSystemMessage(formatter.format().output());
+                recipient.sendSystemMessage(formatted.output());
             }
         }
     }
@@ -154,15 +155,15 @@ public abstract class PlayerMixin implements PlayerTeleports {
     private void doAccept(TeleportRequest request) {
         ChatContext messageContext = request.getMessageContext();
         {
-            ChatFormatter formatter = new ChatFormatter(GOT_ACCEPTED, messageContext);
-            sendSystemMessage(formatter.format().output());
+            ChatFormatter.Results formatted = ChatTemplate.compile(GOT_ACCEPTED).render(messageContext);
+            sendSystemMessage(formatted.output());
         }
 
         if (request.recipient() instanceof EntityRecipient<?> r) {
-            ChatFormatter formatter = new ChatFormatter(ACCEPTED, messageContext);
+            ChatFormatter.Results formatted = ChatTemplate.compile(ACCEPTED).render(messageContext);
             Entity recipient = r.recipient();
             if (recipient != null) {
-                recipient.sendSystemMessage(formatter.format().output());
+                recipient.sendSystemMessage(formatted.output());
             }
         }
     }
@@ -173,11 +174,11 @@ public abstract class PlayerMixin implements PlayerTeleports {
             Entity recipient = r.recipient();
             Objects.requireNonNull(recipient);
             if (!Objects.equals(recipient, entity())) request.sender().error("<mc:red>Sent request was not received by the correct entity.");
-            ChatFormatter formatter = new ChatFormatter(INBOUND_RECEIVE, new ChatContext()
+            ChatFormatter.Results formatted = ChatTemplate.compile(INBOUND_RECEIVE).render(new ChatContext()
                     .key("recipient-name", this.getObjName().getString())
                     .key("sender-name", request.sender().getObjName().getString())
                     .key("teleport-id", request.id()));
-            sendSystemMessage(formatter.format().output());
+            sendSystemMessage(formatted.output());
         }
 
         receivedRequests.put(request.id(), request);
@@ -189,11 +190,11 @@ public abstract class PlayerMixin implements PlayerTeleports {
             Entity recipient = r.recipient();
             if (!Objects.equals(recipient, entity())) request.sender().error("<mc:red>Sent request was not received by the correct entity.");
             Objects.requireNonNull(recipient);
-            ChatFormatter formatter = new ChatFormatter(OUTBOUND_RECEIVE, new ChatContext()
+            ChatFormatter.Results formatted = ChatTemplate.compile(OUTBOUND_RECEIVE).render(new ChatContext()
                     .key("recipient-name", this.getObjName().getString())
                     .key("sender-name", request.sender().getObjName().getString())
                     .key("teleport-id", request.id()));
-            sendSystemMessage(formatter.format().output());
+            sendSystemMessage(formatted.output());
         }
 
         receivedRequests.put(request.id(), request);
@@ -211,15 +212,15 @@ public abstract class PlayerMixin implements PlayerTeleports {
         removed.cancel();
 
         {
-            ChatFormatter formatter = new ChatFormatter(CANCEL_SUCCESS, removed.getMessageContext());
-            sendSystemMessage(formatter.format().output());
+            ChatFormatter.Results formatted = ChatTemplate.compile(CANCEL_SUCCESS).render(removed.getMessageContext());
+            sendSystemMessage(formatted.output());
         }
 
         if (removed.recipient() instanceof EntityRecipient<?> receiver) {
             Entity entity = receiver.recipient();
             Objects.requireNonNull(entity);
-            ChatFormatter formatter = new ChatFormatter(CANCELLED_BY_SENDER, removed.getMessageContext());
-            entity.sendSystemMessage(formatter.format().output());
+            ChatFormatter.Results formatted = ChatTemplate.compile(CANCELLED_BY_SENDER).render(removed.getMessageContext());
+            entity.sendSystemMessage(formatted.output());
         }
 
         return true;
@@ -247,18 +248,11 @@ public abstract class PlayerMixin implements PlayerTeleports {
     public void teleportTo(Entity destination) {
         if (currentTeleport != null) return;
 
-        UUID uuid;
         synchronized (lock) {
-            do {
-                uuid = UUID.randomUUID();
-            } while (ACTIVE_TELEPORTS.contains(uuid));
-
-            ACTIVE_TELEPORTS.add(uuid);
-
             currentTeleport = new Teleport<>(getUUID(), TeleportDestination.entity(destination));
             currentTeleport.onSuccess(this::clearTp);
             currentTeleport.onFail(this::clearTp);
-            currentTeleportId = uuid;
+            currentTeleportId = TELEPORT_IDS.incrementAndGet();
             currentTeleport.prepare();
         }
     }
@@ -267,18 +261,11 @@ public abstract class PlayerMixin implements PlayerTeleports {
     public synchronized void teleportTo(Vec3 destination) {
         if (currentTeleport != null) return;
 
-        UUID uuid;
         synchronized (lock) {
-            do {
-                uuid = UUID.randomUUID();
-            } while (ACTIVE_TELEPORTS.contains(uuid));
-
-            ACTIVE_TELEPORTS.add(uuid);
-
             currentTeleport = new Teleport<>(getUUID(), TeleportDestination.pos(destination));
             currentTeleport.onSuccess(this::clearTp);
             currentTeleport.onFail(this::clearTp);
-            currentTeleportId = uuid;
+            currentTeleportId = TELEPORT_IDS.incrementAndGet();
             currentTeleport.prepare();
         }
     }
@@ -301,10 +288,8 @@ public abstract class PlayerMixin implements PlayerTeleports {
 
     private void clearTp() {
         synchronized (lock) {
-            ACTIVE_TELEPORTS.remove(currentTeleportId);
-
             currentTeleport = null;
-            currentTeleportId = null;
+            currentTeleportId = 0;
         }
     }
 
@@ -2,13 +2,21 @@ package com.ultreon.mods.servercore.network;
 
 import com.ultreon.mods.servercore.ServerCore;
 import com.ultreon.mods.servercore.network.messages.PreferencesSyncMessage;
+import com.ultreon.mods.servercore.network.messages.StateSyncBatchMessage;
 import com.ultreon.mods.servercore.network.messages.StateSyncMessage;
+import com.ultreon.mods.servercore.server.ServerHooks;
+import com.ultreon.mods.servercore.server.metrics.Counter;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
+import com.ultreon.mods.servercore.server.metrics.Timer;
 import dev.architectury.networking.NetworkChannel;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Network class for sending packets Server &lt;--&gt; Client.
  *
@@ -36,6 +44,14 @@ public class Network {
      */
     public static final NetworkChannel CHANNEL = NetworkChannel.create(ServerCore.res("net"));
 
+    // Keyed by UUID, a respawn replaces the player entity. Lists are only modified inside map operations.
+    private static final Map<UUID, List<StateSyncMessage>> PENDING_STATE_SYNC = new ConcurrentHashMap<>();
+    private static final Counter STATE_SYNC_QUEUED = Metrics.counter("network.state_sync.queued");
+    private static final Counter STATE_SYNC_MESSAGES = Metrics.counter("network.state_sync.messages");
+    private static final Counter STATE_SYNC_BATCHES = Metrics.counter("network.state_sync.batches");
+    private static final Counter STATE_SYNC_BYTES = Metrics.counter("network.state_sync.bytes");
+    private static final Timer STATE_SYNC_FLUSH = Metrics.timer("network.state_sync.flush");
+
     /**
      * Initialize the network system.
      *
@@ -45,16 +61,99 @@ public class Network {
     public static void init() {
         CHANNEL.register(StateSyncMessage.class, StateSyncMessage::encode, StateSyncMessage::new, StateSyncMessage::apply);
         CHANNEL.register(PreferencesSyncMessage.class, PreferencesSyncMessage::encode, PreferencesSyncMessage::new, PreferencesSyncMessage::apply);
+        CHANNEL.register(StateSyncBatchMessage.class, StateSyncBatchMessage::encode, StateSyncBatchMessage::new, StateSyncBatchMessage::apply);
     }
 
     /**
      * Send a state synchronize packet.
+     * The message is queued, and sent together with the other messages for the player at the end of the tick.
      *
      * @param player the player to send it to.
      * @param type   the type of sync.
      * @param data   the data to sync.
      */
     public static void sendStateSync(ServerPlayer player, ResourceLocation type, CompoundTag data) {
-        CHANNEL.sendToPlayer(player, new StateSyncMessage(type, data));
+        StateSyncMessage message = new StateSyncMessage(type, data);
+        PENDING_STATE_SYNC.compute(player.getUUID(), (key, messages) -> {
+            if (messages == null) messages = new ArrayList<>();
+            messages.add(message);
+            return messages;
+        });
+        STATE_SYNC_QUEUED.increment();
+    }
+
+    /**
+     * Send all queued state synchronize messages, one packet per player.
+     *
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public static void flushStateSync() {
+        if (PENDING_STATE_SYNC.isEmpty()) return;
+
+        long start = STATE_SYNC_FLUSH.start();
+        for (UUID uuid : PENDING_STATE_SYNC.keySet()) {
+            // Messages queued from other threads after the removal go in a new list, and are sent with the next flush.
+            List<StateSyncMessage> messages = PENDING_STATE_SYNC.remove(uuid);
+            if (messages == null) continue;
+
+            // Sent to the current player entity, messages for players that left are dropped.
+            ServerPlayer player = ServerHooks.server().getPlayerList().getPlayer(uuid);
+            if (player == null || player.hasDisconnected()) continue;
+
+            STATE_SYNC_MESSAGES.add(messages.size());
+            STATE_SYNC_BATCHES.increment();
+            if (messages.size() == 1) {
+                CHANNEL.sendToPlayer(player, messages.get(0));
+            } else {
+                CHANNEL.sendToPlayer(player, new StateSyncBatchMessage(messages));
+            }
+        }
+        STATE_SYNC_FLUSH.stop(start);
+    }
+
+    /**
+     * Drop all queued state synchronize messages.
+     *
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public static void clearStateSync() {
+        PENDING_STATE_SYNC.clear();
+    }
+
+    @ApiStatus.Internal
+    public static void recordStateSyncBytes(int bytes) {
+        STATE_SYNC_BYTES.add(bytes);
+    }
+
+    /**
+     * Get the amount of state sync messages that were sent.
+     *
+     * @return the amount of messages.
+     * @since 0.1.0
+     */
+    public static long getStateSyncMessages() {
+        return STATE_SYNC_MESSAGES.get();
+    }
+
+    /**
+     * Get the amount of state sync packets that were sent, a packet contains one or more messages.
+     *
+     * @return the amount of packets.
+     * @since 0.1.0
+     */
+    public static long getStateSyncBatches() {
+        return STATE_SYNC_BATCHES.get();
+    }
+
+    /**
+     * Get the amount of bytes of state sync packets that were encoded.
+     *
+     * @return the amount of bytes.
+     * @since 0.1.0
+     */
+    public static long getStateSyncBytes() {
+        return STATE_SYNC_BYTES.get();
     }
 }
@@ -0,0 +1,204 @@
+package com.ultreon.mods.servercore.network;
+
+import com.ultreon.mods.servercore.server.Permission;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Compact permission synchronization.
+ * <p>
+ * The server assigns every permission it sends to a client an id, the dictionary is sent along the first time the
+ * permission is used. Changes are sent as lists of added and removed ids, encoded as delta varints or as a bitset,
+ * whichever is smaller.
+ * <p>
+ * Binary layout of the {@code Delta} byte array:
+ * <pre>
+ *     varint flags                       (1 = reset, the client clears its permissions and dictionary first)
+ *     varint base, varint count, utf[count]   (new dictionary entries, ids start at base)
+ *     id set added
+ *     id set removed
+ * </pre>
+ * An id set is a byte mode followed by either a varint count and the ascending ids as varint deltas,
+ * or a byte array of a bitset indexed by id.
+ *
+ * @since 0.1.0
+ */
+@ApiStatus.Internal
+public final class PermissionDelta {
+    private static final int FLAG_RESET = 1;
+    private static final byte MODE_DELTA = 0;
+    private static final byte MODE_BITSET = 1;
+
+    private PermissionDelta() {
+        throw new UnsupportedOperationException("Can't instantiate utility class");
+    }
+
+    /**
+     * Server-side encoder, keeps track of what the client has.
+     *
+     * @since 0.1.0
+     */
+    public static final class Encoder {
+        private final Object2IntMap<Permission> ids = new Object2IntOpenHashMap<>();
+        private final Set<Permission> mirror = new HashSet<>();
+        private boolean reset = true;
+
+        /**
+         * Forget what the client has, the next delta resets the client.
+         *
+         * @since 0.1.0
+         */
+        public void reset() {
+            ids.clear();
+            mirror.clear();
+            reset = true;
+        }
+
+        /**
+         * Encode the changes needed for the client to have a set of permissions.
+         *
+         * @param granted all the permissions the client should have.
+         * @return the state sync data, or null if the client is already up-to-date.
+         * @since 0.1.0
+         */
+        @Nullable
+        public CompoundTag encode(Set<Permission> granted) {
+            List<Permission> entries = new ArrayList<>();
+            int base = ids.size();
+            IntArrayList added = new IntArrayList();
+            IntArrayList removed = new IntArrayList();
+
+            for (Permission permission : granted) {
+                if (mirror.contains(permission)) continue;
+                int id = ids.getOrDefault(permission, -1);
+                if (id == -1) {
+                    id = ids.size();
+                    ids.put(permission, id);
+                    entries.add(permission);
+                }
+                added.add(id);
+            }
+            for (Iterator<Permission> iterator = mirror.iterator(); iterator.hasNext(); ) {
+                Permission permission = iterator.next();
+                if (!granted.contains(permission)) {
+                    removed.add(ids.getInt(permission));
+                    iterator.remove();
+                }
+            }
+            mirror.addAll(granted);
+
+            if (!reset && added.isEmpty() && removed.isEmpty()) return null;
+
+            FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
+            buf.writeVarInt(reset ? FLAG_RESET : 0);
+            buf.writeVarInt(base);
+            buf.writeVarInt(entries.size());
+            for (Permission entry : entries) {
+                buf.writeUtf(entry.id());
+            }
+            writeIds(buf, added.toIntArray());
+            writeIds(buf, removed.toIntArray());
+            reset = false;
+
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            buf.release();
+
+            CompoundTag tag = new CompoundTag();
+            tag.putByteArray("Delta", bytes);
+            return tag;
+        }
+    }
+
+    /**
+     * Client-side decoder, keeps the dictionary sent by the server.
+     *
+     * @since 0.1.0
+     */
+    public static final class Decoder {
+        private final List<Permission> dictionary = new ArrayList<>();
+
+        /**
+         * Apply the state sync data to a set of permissions.
+         *
+         * @param data        the state sync data.
+         * @param permissions the permissions to update.
+         * @since 0.1.0
+         */
+        public void apply(CompoundTag data, Set<Permission> permissions) {
+            FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.wrappedBuffer(data.getByteArray("Delta")));
+            int flags = buf.readVarInt();
+            if ((flags & FLAG_RESET) != 0) {
+                dictionary.clear();
+                permissions.clear();
+            }
+
+            int base = buf.readVarInt();
+            if (base != dictionary.size()) {
+                throw new IllegalStateException("Permission dictionary out of sync, expected " + dictionary.size() + " but got " + base);
+            }
+            int count = buf.readVarInt();
+            for (int i = 0; i < count; i++) {
+                dictionary.add(Permission.of(buf.readUtf()));
+            }
+
+            for (int id : readIds(buf)) permissions.add(dictionary.get(id));
+            for (int id : readIds(buf)) permissions.remove(dictionary.get(id));
+        }
+    }
+
+    private static void writeIds(FriendlyByteBuf buf, int[] ids) {
+        Arrays.sort(ids);
+
+        int deltaSize = FriendlyByteBuf.getVarIntSize(ids.length);
+        int previous = 0;
+        for (int id : ids) {
+            deltaSize += FriendlyByteBuf.getVarIntSize(id - previous);
+            previous = id;
+        }
+
+        byte[] bits = null;
+        if (ids.length > 0) {
+            BitSet bitSet = new BitSet(ids[ids.length - 1] + 1);
+            for (int id : ids) bitSet.set(id);
+            bits = bitSet.toByteArray();
+        }
+
+        if (bits != null && FriendlyByteBuf.getVarIntSize(bits.length) + bits.length < deltaSize) {
+            buf.writeByte(MODE_BITSET);
+            buf.writeByteArray(bits);
+        } else {
+            buf.writeByte(MODE_DELTA);
+            buf.writeVarInt(ids.length);
+            previous = 0;
+            for (int id : ids) {
+                buf.writeVarInt(id - previous);
+                previous = id;
+            }
+        }
+    }
+
+    private static int[] readIds(FriendlyByteBuf buf) {
+        byte mode = buf.readByte();
+        if (mode == MODE_BITSET) {
+            return BitSet.valueOf(buf.readByteArray()).stream().toArray();
+        } else if (mode == MODE_DELTA) {
+            int[] ids = new int[buf.readVarInt()];
+            int previous = 0;
+            for (int i = 0; i < ids.length; i++) {
+                previous += buf.readVarInt();
+                ids[i] = previous;
+            }
+            return ids;
+        }
+        throw new IllegalStateException("Unknown id set mode: " + mode);
+    }
+}
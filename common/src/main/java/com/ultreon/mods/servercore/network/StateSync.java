@@ -36,6 +36,13 @@ public class StateSync {
      */
     public static final ResourceLocation INIT_PERMISSIONS = ServerCore.res("init_permissions");
 
+    /**
+     * Sync ID for the compact permission changes, see {@link PermissionDelta}.
+     *
+     * @since 0.1.0
+     */
+    public static final ResourceLocation PERMISSION_DELTA = ServerCore.res("permission_delta");
+
     /**
      * Create a NBT tag for the set permission state sync.
      *
@@ -0,0 +1,90 @@
+package com.ultreon.mods.servercore.network.messages;
+
+import com.google.common.base.Preconditions;
+import com.ultreon.mods.servercore.client.state.MultiplayerState;
+import com.ultreon.mods.servercore.network.Network;
+import dev.architectury.networking.NetworkManager;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.ResourceLocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Multiple state synchronization messages framed in one packet.
+ * The sync types are written once in a table, messages refer to them by index.
+ *
+ * @since 0.1.0
+ */
+public class StateSyncBatchMessage {
+    private final List<StateSyncMessage> messages;
+
+    /**
+     * Read the message data from the byte buffer.
+     *
+     * @param buf the byte buffer to read from.
+     * @since 0.1.0
+     */
+    public StateSyncBatchMessage(FriendlyByteBuf buf) {
+        List<ResourceLocation> types = buf.readList(FriendlyByteBuf::readResourceLocation);
+        int size = buf.readVarInt();
+        this.messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ResourceLocation type = types.get(buf.readVarInt());
+            this.messages.add(new StateSyncMessage(type, buf.readAnySizeNbt()));
+        }
+    }
+
+    /**
+     * Create the message from the messages that will be sent.
+     *
+     * @param messages the messages, in order.
+     * @since 0.1.0
+     */
+    public StateSyncBatchMessage(List<StateSyncMessage> messages) {
+        Preconditions.checkNotNull(messages, "Sync messages should not be null.");
+        this.messages = messages;
+    }
+
+    /**
+     * Encode the message to the byte buffer.
+     *
+     * @param buf the buffer to encode to.
+     * @since 0.1.0
+     */
+    public void encode(FriendlyByteBuf buf) {
+        int start = buf.writerIndex();
+
+        List<ResourceLocation> types = new ArrayList<>();
+        Object2IntMap<ResourceLocation> indices = new Object2IntOpenHashMap<>();
+        for (StateSyncMessage message : messages) {
+            if (!indices.containsKey(message.type())) {
+                indices.put(message.type(), types.size());
+                types.add(message.type());
+            }
+        }
+
+        buf.writeCollection(types, FriendlyByteBuf::writeResourceLocation);
+        buf.writeVarInt(messages.size());
+        for (StateSyncMessage message : messages) {
+            buf.writeVarInt(indices.getInt(message.type()));
+            buf.writeNbt(message.data());
+        }
+        Network.recordStateSyncBytes(buf.writerIndex() - start);
+    }
+
+    /**
+     * Handle the message.
+     *
+     * @param contextSupplier context for where it originated from.
+     */
+    public void apply(Supplier<NetworkManager.PacketContext> contextSupplier) {
+        MultiplayerState multiplayer = StateSyncMessage.multiplayer();
+        for (StateSyncMessage message : messages) {
+            multiplayer.receive(message.type(), message.data());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.ultreon.mods.servercore.network.messages;
 import com.google.common.base.Preconditions;
 import com.ultreon.mods.servercore.client.state.ClientStateManager;
 import com.ultreon.mods.servercore.client.state.MultiplayerState;
+import com.ultreon.mods.servercore.network.Network;
 import dev.architectury.networking.NetworkManager;
 import net.minecraft.client.Minecraft;
 import net.minecraft.nbt.CompoundTag;
@@ -53,8 +54,10 @@ public class StateSyncMessage {
      * @since 0.1.0
      */
     public void encode(FriendlyByteBuf buf) {
+        int start = buf.writerIndex();
         buf.writeResourceLocation(type);
         buf.writeNbt(data);
+        Network.recordStateSyncBytes(buf.writerIndex() - start);
     }
 
     /**
@@ -63,12 +66,36 @@ public class StateSyncMessage {
      * @param contextSupplier context for where it originated from.
      */
     public void apply(Supplier<NetworkManager.PacketContext> contextSupplier) {
+        multiplayer().receive(type, data);
+    }
+
+    static MultiplayerState multiplayer() {
         MultiplayerState multiplayer = ClientStateManager.get().getMultiplayer();
         if (multiplayer == null) {
             ClientStateManager.get().onJoin(Minecraft.getInstance().player);
             multiplayer = ClientStateManager.get().getMultiplayer();
         }
         Objects.requireNonNull(multiplayer, "Multiplayer state is unloaded after manually loading while receiving multiplayer messages.");
-        multiplayer.receive(type, data);
+        return multiplayer;
+    }
+
+    /**
+     * Get the type of data to sync.
+     *
+     * @return the sync type.
+     * @since 0.1.0
+     */
+    public ResourceLocation type() {
+        return type;
+    }
+
+    /**
+     * Get the data to sync.
+     *
+     * @return the sync data.
+     * @since 0.1.0
+     */
+    public CompoundTag data() {
+        return data;
     }
 }
\ No newline at end of file
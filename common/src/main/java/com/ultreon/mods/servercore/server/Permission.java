@@ -2,25 +2,96 @@ package com.ultreon.mods.servercore.server;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
  * Permission class.
+ * <p>
+ * Permissions are interned, use {@link #of(String)} to get the instance for an id.
+ * The id is validated once, and split into segment ids so comparing permissions doesn't allocate.
+ * Only permissions that are granted are interned, checks for arbitrary ids use {@link #lookup(String)} instead,
+ * so unknown ids don't stay in memory.
  *
- * @param id the id of the permission.
  * @since 0.1.0
  */
-public record Permission(String id) implements Comparable<Permission> {
+public final class Permission implements Comparable<Permission> {
     private static final Pattern PATTERN = Pattern.compile("[a-z_]+(\\.[a-z_]+)*");
+    private static final Map<String, Permission> REGISTRY = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> SEGMENT_IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_SEGMENT_ID = new AtomicInteger();
+
+    private final String id;
+    private final int[] segments;
+    private final int hash;
 
     /**
      * Instantiate a permission object.
      *
      * @param id the id of the permission.
      * @since 0.1.0
+     * @deprecated use {@link #of(String)} instead.
      */
-    public Permission {
+    @Deprecated
+    public Permission(String id) {
+        this(of(id));
+    }
+
+    private Permission(Permission interned) {
+        this.id = interned.id;
+        this.segments = interned.segments;
+        this.hash = interned.hash;
+    }
+
+    private Permission(String id, int[] segments) {
+        this.id = id;
+        this.segments = segments;
+        this.hash = id.hashCode();
+    }
+
+    /**
+     * Get the permission for an id.
+     *
+     * @param id the id of the permission.
+     * @return the interned permission.
+     * @throws IllegalArgumentException if the id is invalid.
+     * @since 0.1.0
+     */
+    public static Permission of(String id) {
+        Permission permission = REGISTRY.get(id);
+        if (permission != null) return permission;
+
+        validate(id);
+        return REGISTRY.computeIfAbsent(id, key -> new Permission(key, segment(key)));
+    }
+
+    /**
+     * Get the permission for an id to check for, without interning it.
+     * Returns the interned permission if there is one, otherwise a temporary permission.
+     * A temporary permission is never equal to, or a child of, an interned permission.
+     *
+     * @param id the id of the permission.
+     * @return the interned or temporary permission.
+     * @throws IllegalArgumentException if the id is invalid.
+     * @since 0.1.0
+     */
+    public static Permission lookup(String id) {
+        Permission permission = REGISTRY.get(id);
+        if (permission != null) return permission;
+
+        validate(id);
+        String[] split = id.split("\\.", -1);
+        int[] segments = new int[split.length];
+        for (int i = 0; i < split.length; i++) {
+            // Unknown segments get an id no interned segment has.
+            segments[i] = SEGMENT_IDS.getOrDefault(split[i], -1);
+        }
+        return new Permission(id, segments);
+    }
+
+    private static void validate(String id) {
         if (!PATTERN.matcher(id).find()) {
             if (id.endsWith(".")) throw new IllegalArgumentException("Permission should not end with a dot.");
             if (id.startsWith(".")) throw new IllegalArgumentException("Permission should not start with a dot.");
@@ -29,6 +100,44 @@ public record Permission(String id) implements Comparable<Permission> {
         }
     }
 
+    private static int[] segment(String id) {
+        String[] split = id.split("\\.", -1);
+        int[] segments = new int[split.length];
+        for (int i = 0; i < split.length; i++) {
+            segments[i] = SEGMENT_IDS.computeIfAbsent(split[i], key -> NEXT_SEGMENT_ID.getAndIncrement());
+        }
+        return segments;
+    }
+
+    /**
+     * Get the id of the permission.
+     *
+     * @return the id.
+     * @since 0.1.0
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Get the amount of segments in the permission.
+     *
+     * @return the segment count.
+     */
+    int depth() {
+        return segments.length;
+    }
+
+    /**
+     * Get the interned id of a segment.
+     *
+     * @param index the index of the segment.
+     * @return the segment id.
+     */
+    int segment(int index) {
+        return segments[index];
+    }
+
     /**
      * Check if another permission is a child of this one.
      *
@@ -37,7 +146,7 @@ public record Permission(String id) implements Comparable<Permission> {
      * @since 0.1.0
      */
     public boolean isChild(Permission permission) {
-        return (id + ".").startsWith(permission.id);
+        return startsWith(segments, permission.segments);
     }
 
     /**
@@ -48,24 +157,36 @@ public record Permission(String id) implements Comparable<Permission> {
      * @since 0.1.0
      */
     public boolean isParent(Permission permission) {
-        return (permission.id).startsWith(id + ".");
+        return permission.segments.length > segments.length && startsWith(permission.segments, segments);
+    }
+
+    private static boolean startsWith(int[] segments, int[] prefix) {
+        if (prefix.length > segments.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (segments[i] != prefix[i]) return false;
+        }
+        return true;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Permission that = (Permission) o;
-        return id.equals(that.id);
+        // Segment arrays are shared with the interned instance.
+        return o instanceof Permission that && segments == that.segments;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return hash;
     }
 
     @Override
     public int compareTo(@NotNull Permission o) {
         return id.compareTo(o.id);
     }
+
+    @Override
+    public String toString() {
+        return "Permission[id=" + id + "]";
+    }
 }
@@ -0,0 +1,210 @@
+package com.ultreon.mods.servercore.server;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compiled permission index.
+ * A prefix trie keyed by the interned segment ids of the granted permissions.
+ * <p>
+ * A permission is granted when it is equal to a granted permission, or one of its parents,
+ * the same rule as {@link Permission#isChild(Permission)}.
+ * Grants are reference counted, so the same permission can be granted by multiple ranks and directly.
+ * <p>
+ * The trie is persistent: nodes are never modified, changes copy the path to the root and publish the new root.
+ * Checks are lock-free and can be done from any thread, changes are serialized.
+ *
+ * @since 0.1.0
+ */
+@ApiStatus.Internal
+public final class PermissionIndex {
+    private volatile Node root = Node.EMPTY;
+
+    /**
+     * Add a grant to the index.
+     *
+     * @param permission the granted permission.
+     * @since 0.1.0
+     */
+    public synchronized void add(Permission permission) {
+        int depth = permission.depth();
+        Node[] path = path(permission);
+
+        Node terminal = path[depth];
+        Node node = terminal == null ? new Node(1, 1) : terminal.copy(1, 1);
+        for (int i = depth - 1; i >= 0; i--) {
+            Node parent = path[i];
+            if (parent == null) parent = Node.EMPTY;
+            node = parent.with(i == 0 ? 0 : 1, permission.segment(i), node);
+        }
+        root = node;
+    }
+
+    /**
+     * Add multiple grants to the index.
+     *
+     * @param permissions the granted permissions.
+     * @since 0.1.0
+     */
+    public void addAll(Collection<Permission> permissions) {
+        for (Permission permission : permissions) {
+            add(permission);
+        }
+    }
+
+    /**
+     * Remove a grant from the index.
+     * Does nothing if the permission wasn't granted.
+     *
+     * @param permission the permission to revoke.
+     * @since 0.1.0
+     */
+    public synchronized void remove(Permission permission) {
+        int depth = permission.depth();
+        Node[] path = path(permission);
+
+        Node terminal = path[depth];
+        if (terminal == null || terminal.grants == 0) return;
+
+        // Nothing else passes through a node without references anymore, so the whole branch can go.
+        Node node = terminal.refs == 1 ? null : terminal.copy(-1, -1);
+        for (int i = depth - 1; i > 0; i--) {
+            Node parent = path[i];
+            node = parent.refs == 1 ? null : parent.with(-1, permission.segment(i), node);
+        }
+        root = path[0].with(0, permission.segment(0), node);
+    }
+
+    /**
+     * Remove multiple grants from the index.
+     *
+     * @param permissions the permissions to revoke.
+     * @since 0.1.0
+     */
+    public void removeAll(Collection<Permission> permissions) {
+        for (Permission permission : permissions) {
+            remove(permission);
+        }
+    }
+
+    /**
+     * Check if a permission is granted.
+     * Runs in O(segments), doesn't allocate and doesn't lock.
+     *
+     * @param permission the permission to check for.
+     * @return whether the permission is granted.
+     * @since 0.1.0
+     */
+    public boolean contains(Permission permission) {
+        Node node = root;
+        for (int i = 0, depth = permission.depth(); i < depth; i++) {
+            node = node.get(permission.segment(i));
+            if (node == null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replace all grants with the grants of another index.
+     * The change is published at once, checks never see a partially filled index.
+     *
+     * @param other the index to copy from.
+     * @since 0.1.0
+     */
+    public synchronized void set(PermissionIndex other) {
+        root = other.root;
+    }
+
+    /**
+     * Remove all grants.
+     *
+     * @since 0.1.0
+     */
+    public synchronized void clear() {
+        root = Node.EMPTY;
+    }
+
+    private Node[] path(Permission permission) {
+        int depth = permission.depth();
+        Node[] path = new Node[depth + 1];
+        path[0] = root;
+        for (int i = 0; i < depth && path[i] != null; i++) {
+            path[i + 1] = path[i].get(permission.segment(i));
+        }
+        return path;
+    }
+
+    private static final class Node {
+        private static final int[] NO_KEYS = new int[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        static final Node EMPTY = new Node(0, 0);
+
+        private final int[] keys;
+        private final Node[] children;
+        final int refs;
+        final int grants;
+
+        Node(int refs, int grants) {
+            this(NO_KEYS, NO_CHILDREN, refs, grants);
+        }
+
+        private Node(int[] keys, Node[] children, int refs, int grants) {
+            this.keys = keys;
+            this.children = children;
+            this.refs = refs;
+            this.grants = grants;
+        }
+
+        Node get(int key) {
+            int[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node copy(int refsDelta, int grantsDelta) {
+            return new Node(keys, children, refs + refsDelta, grants + grantsDelta);
+        }
+
+        /**
+         * Copy the node with a child replaced, added, or removed when the child is null.
+         */
+        Node with(int refsDelta, int key, Node child) {
+            int index = -1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    index = i;
+                    break;
+                }
+            }
+
+            int[] keys;
+            Node[] children;
+            if (index == -1) {
+                if (child == null) return copy(refsDelta, 0);
+                keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+                children = Arrays.copyOf(this.children, this.children.length + 1);
+                keys[keys.length - 1] = key;
+                children[children.length - 1] = child;
+            } else if (child == null) {
+                int last = this.keys.length - 1;
+                keys = Arrays.copyOf(this.keys, last);
+                children = Arrays.copyOf(this.children, last);
+                if (index != last) {
+                    keys[index] = this.keys[last];
+                    children[index] = this.children[last];
+                }
+            } else {
+                keys = this.keys;
+                children = this.children.clone();
+                children[index] = child;
+            }
+            return new Node(keys, children, refs + refsDelta, grants);
+        }
+    }
+}
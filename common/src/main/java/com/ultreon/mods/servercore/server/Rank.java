@@ -1,16 +1,18 @@
 package com.ultreon.mods.servercore.server;
 
-import com.ultreon.mods.servercore.server.state.ServerPlayerState;
+import com.ultreon.mods.servercore.server.chat.ChatContext;
+import com.ultreon.mods.servercore.server.chat.ChatFormatter;
 import com.ultreon.mods.servercore.server.state.ServerStateManager;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.network.chat.Component;
 
-import java.util.HashSet;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Server rank class.
@@ -23,11 +25,14 @@ public class Rank {
      *
      * @since 0.1.0
      */
-    protected final Set<Permission> permissions = new HashSet<>();
+    protected final Set<Permission> permissions = ConcurrentHashMap.newKeySet();
     private final String id;
-    private String prefix;
-    private String name;
-    private int priority;
+    private volatile String prefix;
+    private volatile String name;
+    private volatile int priority;
+    private volatile Component prefixComponent;
+    private int modCount;
+    private int savedModCount;
 
     /**
      * Create a rank from NBT data.
@@ -44,7 +49,7 @@ public class Rank {
         ListTag permissions = tag.getList("Permissions", Tag.TAG_STRING);
         permissions.forEach(elem -> {
             if (elem instanceof StringTag s) {
-                this.permissions.add(new Permission(s.getAsString()));
+                this.permissions.add(Permission.of(s.getAsString()));
             }
         });
 
@@ -83,6 +88,10 @@ public class Rank {
         }
 
         this.prefix = prefix;
+        this.priority = priority;
+
+        // Not stored yet.
+        this.modCount = 1;
     }
 
     /**
@@ -113,6 +122,8 @@ public class Rank {
      */
     public void setName(String name) {
         this.name = name;
+        this.modCount++;
+        onDisplayChanged();
     }
 
     /**
@@ -122,7 +133,7 @@ public class Rank {
      * @since 0.1.0
      */
     public void addPermission(String permission) {
-        this.addPermission(new Permission(permission));
+        this.addPermission(Permission.of(permission));
     }
 
     /**
@@ -132,10 +143,11 @@ public class Rank {
      * @since 0.1.0
      */
     public void addPermission(Permission permission) {
-        permissions.add(permission);
+        if (!permissions.add(permission)) return;
+        modCount++;
         ServerStateManager manager = ServerStateManager.get();
         if (manager != null) {
-            manager.getOnlinePlayersWith(this).forEach(player -> manager.player(player).sendAddPermission(permission));
+            manager.onRankPermissionAdded(this, permission);
         }
     }
 
@@ -146,7 +158,7 @@ public class Rank {
      * @since 0.1.0
      */
     public void removePermission(String permission) {
-        this.removePermission(new Permission(permission));
+        this.removePermission(Permission.lookup(permission));
     }
 
     /**
@@ -156,15 +168,11 @@ public class Rank {
      * @since 0.1.0
      */
     public void removePermission(Permission permission) {
-        permissions.remove(permission);
+        if (!permissions.remove(permission)) return;
+        modCount++;
         ServerStateManager manager = ServerStateManager.get();
         if (manager != null) {
-            manager.getOnlinePlayersWith(this).forEach(player -> {
-                ServerPlayerState playerState = manager.player(player);
-                if (!playerState.hasPermission(permission)) {
-                    playerState.sendRemovePermission(permission);
-                }
-            });
+            manager.onRankPermissionRemoved(this, permission);
         }
     }
 
@@ -176,7 +184,7 @@ public class Rank {
      * @since 0.1.0
      */
     public boolean hasPermission(String permission) {
-        return hasPermission(new Permission(permission));
+        return hasPermission(Permission.lookup(permission));
     }
 
     /**
@@ -187,7 +195,10 @@ public class Rank {
      * @since 0.1.0
      */
     public boolean hasPermission(Permission permission) {
-        return permissions.stream().anyMatch(perm -> perm.isChild(permission) || perm.equals(permission));
+        for (Permission perm : permissions) {
+            if (perm.isChild(permission)) return true;
+        }
+        return false;
     }
 
     /**
@@ -207,6 +218,7 @@ public class Rank {
      * @since 0.1.0
      */
     public CompoundTag save() {
+        savedModCount = modCount;
         CompoundTag tag = new CompoundTag();
         ListTag permissions = new ListTag();
         this.permissions.forEach(permission -> permissions.add(StringTag.valueOf(permission.id())));
@@ -249,6 +261,8 @@ public class Rank {
      */
     public void setPriority(int priority) {
         this.priority = priority;
+        this.modCount++;
+        onDisplayChanged();
     }
 
     /**
@@ -269,5 +283,51 @@ public class Rank {
      */
     public void setPrefix(String prefix) {
         this.prefix = prefix;
+        this.prefixComponent = null;
+        this.modCount++;
+    }
+
+    /**
+     * Get the chat prefix rendered as a component.
+     * Rendered once, and cached until the prefix is changed.
+     *
+     * @return the prefix component, shared so copy it before modifying.
+     * @since 0.1.0
+     */
+    public Component getPrefixComponent() {
+        Component component = prefixComponent;
+        if (component == null) {
+            component = new ChatFormatter(prefix, new ChatContext(), false, true).format().output();
+            prefixComponent = component;
+        }
+        return component;
+    }
+
+    private void onDisplayChanged() {
+        ServerStateManager manager = ServerStateManager.get();
+        if (manager != null) {
+            manager.onRankDisplayChanged(this);
+        }
+    }
+
+    /**
+     * Get the modification counter of the rank.
+     * Increases every time the rank is changed.
+     *
+     * @return the modification count.
+     * @since 0.1.0
+     */
+    public int version() {
+        return modCount;
+    }
+
+    /**
+     * Check if the rank has changed since it was last saved.
+     *
+     * @return whether the rank has unsaved changes.
+     * @since 0.1.0
+     */
+    public boolean isDirty() {
+        return modCount != savedModCount;
     }
 }
@@ -4,8 +4,10 @@ import com.google.errorprone.annotations.CheckReturnValue;
 import com.ultreon.mods.servercore.mixin.AntiMixin;
 import org.checkerframework.common.value.qual.IntRange;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 
 /**
  * Scheduled task.
@@ -14,46 +16,95 @@ import java.util.UUID;
  */
 @AntiMixin
 public final class ScheduledTask implements SingleRunnable {
+    private final TaskManager manager;
     private final int delay;
     private final Runnable task;
-    private int remaining;
+    private final TaskPriority priority;
+    private final int period;
+    private final int maxRuns;
+    @Nullable
+    private final BooleanSupplier until;
     private boolean valid = true;
-    private final UUID token;
-    private boolean accessBlocked;
+    private boolean done;
+    private int runs;
+    private final long token;
+
+    // Timing wheel bookkeeping, guarded by the task manager.
+    long deadline;
+    ScheduledTask next;
+    ScheduledTask prev;
+    int level = -1;
+    int slot;
+
+    // Work running off the server thread, null for tasks that only run on the tick.
+    @Nullable Future<?> future;
 
     /**
      * Create an instance of a scheduled task.
      *
-     * @param delay initial delay. Note: the delay can't be negative.
-     * @param task the task when the task will be ran.
+     * @param manager  the task manager the task is scheduled in.
+     * @param token    the token to cancel the task with.
+     * @param delay    initial delay. Note: the delay can't be negative.
+     * @param deadline the tick when the task will be run.
+     * @param task     the task when the task will be ran.
+     * @param priority the priority of the task.
      */
     @ApiStatus.Internal
-    public ScheduledTask(UUID token, int delay, Runnable task) {
+    ScheduledTask(TaskManager manager, long token, int delay, long deadline, Runnable task, TaskPriority priority) {
+        this(manager, token, delay, deadline, task, priority, 0, 1, null);
+    }
+
+    /**
+     * Create an instance of a repeating task.
+     *
+     * @param manager  the task manager the task is scheduled in.
+     * @param token    the token to cancel the task with.
+     * @param delay    initial delay. Note: the delay can't be negative.
+     * @param deadline the tick when the task will be run first.
+     * @param task     the task when the task will be ran.
+     * @param priority the priority of the task.
+     * @param period   the ticks between runs, or 0 to run once.
+     * @param maxRuns  the maximum amount of runs, or 0 for no limit.
+     * @param until    when it returns true before a run, the task is done instead. Null to repeat regardless.
+     */
+    @ApiStatus.Internal
+    ScheduledTask(TaskManager manager, long token, int delay, long deadline, Runnable task, TaskPriority priority, int period, int maxRuns, @Nullable BooleanSupplier until) {
         if (delay < 0) throw new IllegalArgumentException("Delay can't be negative.");
+        if (period < 0) throw new IllegalArgumentException("Period can't be negative.");
+        if (maxRuns < 0) throw new IllegalArgumentException("Max runs can't be negative.");
+        this.manager = manager;
         this.delay = delay;
-        this.remaining = delay;
+        this.deadline = deadline;
         this.task = task;
+        this.priority = priority;
+        this.period = period;
+        this.maxRuns = maxRuns;
+        this.until = until;
         this.token = token;
     }
 
     /**
-     * Tick the task, and run if there's no remaining ticks.
+     * Run the task, called when the deadline is reached.
      *
-     * @return whether the task can be removed.
+     * @return whether the task can be removed, false if it repeats.
      */
     @Override
     @CheckReturnValue
     @ApiStatus.Internal
     public synchronized boolean run() {
-        // If invalid it should be removed.
-        if (!valid) return false;
-
-        accessBlocked = true;
+        // If invalid or already run it should be removed.
+        if (!valid || done) return true;
+        if (until != null && until.getAsBoolean()) {
+            done = true;
+            return true;
+        }
 
-        // Check for zero, for safety reasons.
-        if (remaining == 0) task.run();
+        runs++;
+        if (period == 0 || maxRuns > 0 && runs >= maxRuns) done = true;
+        task.run();
 
-        return --remaining < 0;
+        // The task can cancel itself while running.
+        return done || !valid;
     }
 
     /**
@@ -62,20 +113,23 @@ public final class ScheduledTask implements SingleRunnable {
      * @return whether the task is still valid.
      */
     public boolean stillValid() {
-        return remaining >= 0;
+        return !done;
     }
 
     /**
      * Get the remaining ticks.
      * <p>
      * Returns {@code 0} if the task will run the next tick.<br>
-     * Returns {@code -1} if the task is done.
+     * Returns {@code -1} if the task is done.<br>
+     * Returns {@link Integer#MAX_VALUE} if the async work of the task is still running.
      *
      * @return the remaining ticks until execution.
      */
     @IntRange(from = -1)
     public int remaining() {
-        return Math.max(remaining, -1);
+        if (done) return -1;
+        if (deadline == Long.MAX_VALUE) return Integer.MAX_VALUE;
+        return (int) Math.max(deadline - manager.currentTick() - 1, 0);
     }
 
     /**
@@ -83,7 +137,7 @@ public final class ScheduledTask implements SingleRunnable {
      * @param token
      * @return
      */
-    public boolean invalidate(UUID token) {
+    public boolean invalidate(long token) {
         if (this.token == token) {
             valid = false;
             return true;
@@ -91,10 +145,48 @@ public final class ScheduledTask implements SingleRunnable {
         return false;
     }
 
-    public UUID token() {
+    public long token() {
         return token;
     }
 
+    /**
+     * Check if the task runs work off the server thread.
+     *
+     * @return whether the task is async.
+     */
+    public boolean isAsync() {
+        return future != null;
+    }
+
+    /**
+     * Get the priority of the task.
+     *
+     * @return the priority.
+     */
+    public TaskPriority priority() {
+        return priority;
+    }
+
+    /**
+     * Get the ticks between runs of the task.
+     *
+     * @return the period, or 0 if the task runs once.
+     */
+    @IntRange(from = 0)
+    public int period() {
+        return period;
+    }
+
+    /**
+     * Get the amount of times the task has run.
+     *
+     * @return the amount of runs.
+     */
+    @IntRange(from = 0)
+    public int runs() {
+        return runs;
+    }
+
     /**
      * Get the delay the task was initiated with.
      *
@@ -2,10 +2,13 @@ package com.ultreon.mods.servercore.server;
 
 import com.mojang.brigadier.CommandDispatcher;
 import com.ultreon.mods.servercore.mixin.AntiMixin;
-import com.ultreon.mods.servercore.server.chat.ChatContext;
+import com.ultreon.mods.servercore.network.Network;
+import com.ultreon.mods.servercore.server.chat.ChatClock;
 import com.ultreon.mods.servercore.server.chat.ChatFormatter;
+import com.ultreon.mods.servercore.server.chat.ChatPipeline;
 import com.ultreon.mods.servercore.server.commands.*;
-import com.ultreon.mods.servercore.server.event.ChatContextEvent;
+import com.ultreon.mods.servercore.server.config.Config;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
 import com.ultreon.mods.servercore.server.state.ServerStateManager;
 import com.ultreon.mods.servercore.server.teleport.TeleportManager;
 import dev.architectury.event.EventResult;
@@ -14,6 +17,7 @@ import it.unimi.dsi.fastutil.objects.ReferenceArraySet;
 import net.minecraft.commands.CommandBuildContext;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.ChatDecorator;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
@@ -24,10 +28,8 @@ import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Server events class.
@@ -41,6 +43,7 @@ public class ServerEvents {
     private static MinecraftServer server;
     private final ReferenceArraySet<Player> hasTicked = new ReferenceArraySet<>();
     private final TaskManager taskManager = TaskManager.INSTANCE;
+    private final ChatPipeline chatPipeline = new ChatPipeline();
 
     private ServerEvents() {
         LifecycleEvent.SERVER_BEFORE_START.register(this::start);
@@ -59,6 +62,17 @@ public class ServerEvents {
 
     private void onTick(MinecraftServer minecraftServer) {
         this.taskManager.tick();
+        this.chatPipeline.tick();
+        ChatClock.tick();
+        Metrics.tick();
+
+        ServerStateManager manager = ServerStateManager.get();
+        if (manager != null) {
+            manager.tick();
+        }
+
+        // Last, so everything queued during the tick goes out in one packet per player.
+        Network.flushStateSync();
     }
 
     public static MinecraftServer server() {
@@ -70,24 +84,16 @@ public class ServerEvents {
             return;
         }
 
+        // Async chat is decorated by the chat decorator of the server instead, see asyncChatDecorator.
+        if (Config.isAsyncChat()) return;
+
         try {
             ServerStateManager manager = ServerStateManager.get();
             if (manager == null) return;
 
-            Rank highestRank = manager.player(player).getHighestRank();
-            Component component = message.get();
-            String string = component.getString();
-            ChatContext context = new ChatContext()
-                    .key("username", player.getName().getString())
-                    .key("display-getObjName", player.getDisplayName().getString())
-                    .key("rank-getObjName", highestRank.getName())
-                    .key("getObjPos", () -> "x" + player.getBlockX() + ", y" + player.getBlockY() + ", z" + player.getBlockZ())
-                    .key("time", () -> ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_TIME))
-                    .key("date", () -> ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE));
-
-            ChatContextEvent.EVENT.invoker().onChatContext(context, player);
-            ChatFormatter formatter = new ChatFormatter(string, context);
-            message.set(formatter.format().output());
+            // Copied, the results are shared with the receive event.
+            ChatFormatter.Results results = chatPipeline.process(manager, player, message.get().getString());
+            message.set(results.output().copy());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -102,21 +108,50 @@ public class ServerEvents {
             ServerStateManager manager = ServerStateManager.get();
             if (manager == null) return null;
 
-            String string = message.getString();
-            ChatFormatter formatter = new ChatFormatter(string);
-            ChatFormatter.Results results = formatter.format();
+            // The message is only received once decorating it is done, so this doesn't block.
+            ChatFormatter.Results results = chatPipeline.process(manager, player, message.getString());
             if (results.error()) {
                 return EventResult.interruptFalse();
             }
-            for (ServerPlayer pinged : formatter.format().pinged()) {
-                pinged.playNotifySound(SoundEvents.NOTE_BLOCK_BELL, SoundSource.PLAYERS, 2, 2);
-            }
+            ping(results);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return EventResult.pass();
     }
 
+    /**
+     * Wrap the chat decorator of the server for async chat.
+     * Messages are formatted on the chat workers, the returned future completes there.
+     * The server then broadcasts the decorated message on its own thread, so it never waits for the formatting.
+     *
+     * @param parent the decorator to wrap.
+     * @return the async decorator.
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public ChatDecorator asyncChatDecorator(ChatDecorator parent) {
+        return (player, message) -> {
+            CompletableFuture<Component> decorated = parent.decorate(player, message);
+            ServerStateManager manager = ServerStateManager.get();
+            if (player == null || manager == null) return decorated;
+
+            return decorated.thenCompose(component -> chatPipeline.submit(manager, player, component.getString())
+                    // Copied, the results are shared with the receive event.
+                    .<Component>thenApply(results -> results.output().copy())
+                    .exceptionally(e -> {
+                        e.printStackTrace();
+                        return component;
+                    }));
+        };
+    }
+
+    private void ping(ChatFormatter.Results results) {
+        for (ServerPlayer pinged : results.pinged()) {
+            pinged.playNotifySound(SoundEvents.NOTE_BLOCK_BELL, SoundSource.PLAYERS, 2, 2);
+        }
+    }
+
     private void onPlayerTick(Player player) {
         if (player instanceof ServerPlayer p) {
             if (!hasTicked.contains(player)) {
@@ -163,14 +198,22 @@ public class ServerEvents {
 
     private void start(MinecraftServer server) {
         ServerEvents.server = server;
+        taskManager.setTickBudget(Config.getTaskTickBudget());
         ServerStateManager.start(server);
         TeleportManager.start(server);
     }
 
     private void stop(MinecraftServer server) {
         ServerEvents.server = null;
-        ServerStateManager.stop();
-        TeleportManager.stop();
+        try {
+            // First, continuations of async tasks may still use the state manager.
+            taskManager.drainAsync();
+        } finally {
+            Network.clearStateSync();
+            chatPipeline.close();
+            ServerStateManager.stop();
+            TeleportManager.stop();
+        }
     }
 
     /**
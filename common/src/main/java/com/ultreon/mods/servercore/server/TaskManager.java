@@ -1,56 +1,435 @@
 package com.ultreon.mods.servercore.server;
 
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.ultreon.mods.servercore.ServerCore;
 import com.ultreon.mods.servercore.mixin.AntiMixin;
+import com.ultreon.mods.servercore.server.config.Config;
+import com.ultreon.mods.servercore.server.metrics.Counter;
+import com.ultreon.mods.servercore.server.metrics.Histogram;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
+import com.ultreon.mods.servercore.server.metrics.Timer;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 @AntiMixin
 public class TaskManager {
     public static final TaskManager INSTANCE = new TaskManager();
-    private final Map<UUID, ScheduledTask> tasks = new ConcurrentHashMap<>();
+    private static final Timer TICK_TIME = Metrics.timer("tasks.tick");
+    private static final Counter TASKS_RUN = Metrics.counter("tasks.run");
+    private static final Counter TASKS_CARRIED_OVER = Metrics.counter("tasks.carried_over");
+    private static final Histogram LATENESS = Metrics.histogram("tasks.lateness");
+    private static final long ASYNC_DRAIN_TIMEOUT_SECONDS = 30;
+
+    static {
+        Metrics.gauge("tasks.pending", INSTANCE::pending);
+        Metrics.gauge("tasks.backlog", INSTANCE::backlog);
+    }
+
+    private final Long2ObjectMap<ScheduledTask> tasks = new Long2ObjectOpenHashMap<>();
+    private final TimingWheel wheel = new TimingWheel(0);
+    private final ArrayDeque<ScheduledTask>[] due = newQueues();
     private final Object lock = new Object();
     private boolean ticking;
+    private long lastToken;
+    private volatile long tickBudget;
+    private ExecutorService asyncExecutor;
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<ScheduledTask>[] newQueues() {
+        ArrayDeque<ScheduledTask>[] queues = new ArrayDeque[TaskPriority.values().length];
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+        return queues;
+    }
 
     @ApiStatus.Internal
     void tick() {
+        long start = TICK_TIME.start();
         synchronized (lock) {
             ticking = true;
-            tasks.values().stream().filter(ScheduledTask::run).forEach(key -> tasks.remove(key.token()));
-            ticking = false;
+            try {
+                wheel.advance(this::enqueue);
+
+                // Tasks scheduled with zero delay during the tick are added to the queues, and run this tick too.
+                // Once the budget is spent, only high priority tasks are run, the rest is carried over to the next tick.
+                // The first task always runs, so a budget smaller than the overhead of the tick still makes progress.
+                long budget = tickBudget;
+                boolean first = true;
+                ScheduledTask task;
+                while ((task = poll(start, first ? 0 : budget)) != null) {
+                    first = false;
+                    LATENESS.record(wheel.now() - task.deadline);
+                    boolean finished = true;
+                    try {
+                        finished = task.run();
+                    } finally {
+                        if (finished) {
+                            tasks.remove(task.token(), task);
+                        } else {
+                            // Repeating tasks are put back in the wheel as they are, with the same token.
+                            task.deadline = wheel.now() + task.period();
+                            wheel.add(task);
+                        }
+                    }
+                    TASKS_RUN.increment();
+                }
+
+                int backlog = backlog();
+                if (backlog > 0) {
+                    TASKS_CARRIED_OVER.add(backlog);
+
+                    // Carried over low priority tasks move up, so a steady load of normal priority tasks can't starve them.
+                    ArrayDeque<ScheduledTask> low = due[TaskPriority.LOW.ordinal()];
+                    due[TaskPriority.NORMAL.ordinal()].addAll(low);
+                    low.clear();
+                }
+            } finally {
+                ticking = false;
+            }
         }
+        TICK_TIME.stop(start);
+    }
+
+    /**
+     * Take the next due task in order of priority.
+     *
+     * @return the task, or null if there's none or the budget is spent.
+     */
+    private ScheduledTask poll(long start, long budget) {
+        for (ArrayDeque<ScheduledTask> queue : due) {
+            ScheduledTask task = queue.peek();
+            if (task == null) continue;
+            if (budget > 0 && task.priority() != TaskPriority.HIGH && System.nanoTime() - start >= budget) return null;
+            return queue.poll();
+        }
+        return null;
+    }
+
+    private void enqueue(ScheduledTask task) {
+        due[task.priority().ordinal()].add(task);
+    }
+
+    /**
+     * Set the time budget of a tick.
+     * Due tasks that don't have a high priority are carried over to the next tick once a tick has used the budget.
+     * The first due task of a tick always runs, and carried over low priority tasks move up to normal priority.
+     *
+     * @param nanos the budget in nanoseconds, 0 or lower for no limit.
+     */
+    public void setTickBudget(long nanos) {
+        this.tickBudget = nanos;
+    }
+
+    /**
+     * Get the time budget of a tick.
+     *
+     * @return the budget in nanoseconds, 0 or lower for no limit.
+     */
+    public long getTickBudget() {
+        return tickBudget;
     }
 
     @CanIgnoreReturnValue
     public ScheduledTask schedule(Runnable task, int afterTicks) {
+        return schedule(task, afterTicks, TaskPriority.NORMAL);
+    }
+
+    /**
+     * Schedule a task with a priority.
+     *
+     * @param task       the task to run.
+     * @param afterTicks the delay in ticks.
+     * @param priority   the priority of the task.
+     * @return the scheduled task.
+     */
+    @CanIgnoreReturnValue
+    public ScheduledTask schedule(Runnable task, int afterTicks, TaskPriority priority) {
+        if (afterTicks < 0) throw new IllegalArgumentException("Delay can't be negative.");
+
         synchronized (lock) {
-            if (ticking) {
-                afterTicks--;
-                if (afterTicks == -1) {
-                    UUID uuid;
-                    do {
-                        uuid = UUID.randomUUID();
-                    } while (!tasks.containsKey(uuid));
-
-                    ScheduledTask scheduledTask = new ScheduledTask(uuid, 0, task);
-                    if (!scheduledTask.run()) throw new InternalError("Scheduled task isn't run at a 0 tick delay.");
-                    return scheduledTask;
+            // While ticking the current tick still counts, otherwise the first tick is the next one.
+            long deadline = (ticking ? wheel.now() : wheel.now() + 1) + afterTicks;
+
+            long token = newToken();
+            ScheduledTask scheduledTask = new ScheduledTask(this, token, afterTicks, deadline, task, priority);
+            tasks.put(token, scheduledTask);
+            if (deadline <= wheel.now()) enqueue(scheduledTask);
+            else wheel.add(scheduledTask);
+            return scheduledTask;
+        }
+    }
+
+    /**
+     * Schedule a task that repeats until cancelled.
+     *
+     * @param task       the task to run.
+     * @param afterTicks the delay in ticks before the first run.
+     * @param period     the ticks between runs.
+     * @return the scheduled task, the same for every run.
+     */
+    @CanIgnoreReturnValue
+    public ScheduledTask scheduleRepeating(Runnable task, int afterTicks, int period) {
+        return scheduleRepeating(task, afterTicks, period, 0, null, TaskPriority.NORMAL);
+    }
+
+    /**
+     * Schedule a task that repeats a limited amount of times.
+     *
+     * @param task       the task to run.
+     * @param afterTicks the delay in ticks before the first run.
+     * @param period     the ticks between runs.
+     * @param maxRuns    the amount of runs.
+     * @return the scheduled task, the same for every run.
+     */
+    @CanIgnoreReturnValue
+    public ScheduledTask scheduleRepeating(Runnable task, int afterTicks, int period, int maxRuns) {
+        return scheduleRepeating(task, afterTicks, period, maxRuns, null, TaskPriority.NORMAL);
+    }
+
+    /**
+     * Schedule a task that repeats until a condition is met.
+     *
+     * @param task       the task to run.
+     * @param afterTicks the delay in ticks before the first run.
+     * @param period     the ticks between runs.
+     * @param until      checked before every run, the task stops instead of running once it returns true.
+     * @return the scheduled task, the same for every run.
+     */
+    @CanIgnoreReturnValue
+    public ScheduledTask scheduleRepeating(Runnable task, int afterTicks, int period, BooleanSupplier until) {
+        return scheduleRepeating(task, afterTicks, period, 0, until, TaskPriority.NORMAL);
+    }
+
+    /**
+     * Schedule a repeating task.
+     * The task and its token are reused for every run, so repeating doesn't allocate.
+     * The next run is scheduled {@code period} ticks after the tick the task ran in.
+     *
+     * @param task       the task to run.
+     * @param afterTicks the delay in ticks before the first run.
+     * @param period     the ticks between runs, at least 1.
+     * @param maxRuns    the maximum amount of runs, or 0 for no limit.
+     * @param until      checked before every run, the task stops instead of running once it returns true. Null to not check.
+     * @param priority   the priority of the task.
+     * @return the scheduled task, the same for every run.
+     */
+    @CanIgnoreReturnValue
+    public ScheduledTask scheduleRepeating(Runnable task, int afterTicks, int period, int maxRuns, @Nullable BooleanSupplier until, TaskPriority priority) {
+        if (afterTicks < 0) throw new IllegalArgumentException("Delay can't be negative.");
+        if (period < 1) throw new IllegalArgumentException("Period must be at least 1.");
+
+        synchronized (lock) {
+            long deadline = (ticking ? wheel.now() : wheel.now() + 1) + afterTicks;
+
+            long token = newToken();
+            ScheduledTask scheduledTask = new ScheduledTask(this, token, afterTicks, deadline, task, priority, period, maxRuns, until);
+            tasks.put(token, scheduledTask);
+            if (deadline <= wheel.now()) enqueue(scheduledTask);
+            else wheel.add(scheduledTask);
+            return scheduledTask;
+        }
+    }
+
+    /**
+     * Run work off the server thread.
+     * Exceptions thrown by the work are logged on the tick after it finished.
+     *
+     * @param work the work to run.
+     * @return the scheduled task, cancelling it before the work started skips the work.
+     */
+    @CanIgnoreReturnValue
+    public ScheduledTask scheduleAsync(Runnable work) {
+        return supplyAsync(() -> {
+            work.run();
+            return null;
+        }, (result, error) -> {
+            if (error != null) ServerCore.LOGGER.error("Async task failed", error);
+        });
+    }
+
+    /**
+     * Run work off the server thread, and handle the result on the tick after it finished.
+     * The continuation runs on the server thread with normal priority, and is subject to the tick budget.
+     *
+     * @param work the work to run.
+     * @param then the continuation, receives the result or the exception thrown by the work.
+     * @param <T>  the type of the result.
+     * @return the scheduled task, cancelling it skips the continuation, and the work if it didn't start yet.
+     */
+    @CanIgnoreReturnValue
+    public <T> ScheduledTask supplyAsync(Supplier<T> work, BiConsumer<? super T, ? super Throwable> then) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ScheduledTask scheduledTask;
+        synchronized (lock) {
+            // The deadline is set when the work is done.
+            long token = newToken();
+            scheduledTask = new ScheduledTask(this, token, 0, Long.MAX_VALUE, () -> {
+                T result = null;
+                Throwable error = null;
+                try {
+                    result = future.join();
+                } catch (CompletionException e) {
+                    error = e.getCause();
+                } catch (CancellationException e) {
+                    error = e;
                 }
+                then.accept(result, error);
+            }, TaskPriority.NORMAL);
+            scheduledTask.future = future;
+            tasks.put(token, scheduledTask);
+        }
+
+        ScheduledTask task = scheduledTask;
+        future.whenComplete((result, error) -> completeAsync(task));
+        asyncExecutor().execute(() -> {
+            if (future.isDone()) return;
+            try {
+                future.complete(work.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
             }
-            UUID uuid = UUID.randomUUID();
-            ScheduledTask scheduledTask = new ScheduledTask(uuid, afterTicks, task);
-            tasks.put(uuid, scheduledTask);
-            return scheduledTask;
+        });
+        return scheduledTask;
+    }
+
+    private void completeAsync(ScheduledTask task) {
+        synchronized (lock) {
+            // Cancelled meanwhile.
+            if (tasks.get(task.token()) != task) return;
+
+            // Run in the next tick, the current one is over once the lock is acquired.
+            task.deadline = ticking ? wheel.now() : wheel.now() + 1;
+            enqueue(task);
+        }
+    }
+
+    /**
+     * Wait for async work to finish, and run the continuations of the work that finished.
+     * Called when the server stops, async tasks scheduled after this start a new executor.
+     */
+    @ApiStatus.Internal
+    public void drainAsync() {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = asyncExecutor;
+            asyncExecutor = null;
+        }
+        if (executor == null) return;
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(ASYNC_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                ServerCore.LOGGER.warn("Timed out waiting for async tasks, their continuations are skipped.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // There's no next tick to run the continuations in.
+        List<ScheduledTask> completed = new ArrayList<>();
+        synchronized (lock) {
+            for (ArrayDeque<ScheduledTask> queue : due) {
+                queue.removeIf(task -> task.isAsync() && completed.add(task));
+            }
+            for (ScheduledTask task : completed) {
+                tasks.remove(task.token());
+                // A failing continuation mustn't keep the others, or the rest of the shutdown, from running.
+                try {
+                    if (!task.run()) ServerCore.LOGGER.warn("Async task continuation wasn't run.");
+                } catch (Exception e) {
+                    ServerCore.LOGGER.error("Async task continuation failed", e);
+                }
+            }
+        }
+    }
+
+    private synchronized ExecutorService asyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = newAsyncExecutor();
+        }
+        return asyncExecutor;
+    }
+
+    private static ExecutorService newAsyncExecutor() {
+        if (Config.isAsyncTaskVirtualThreads()) {
+            try {
+                // Virtual threads are available from Java 21 on.
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                ServerCore.LOGGER.warn("Virtual threads aren't supported by this Java version, using platform threads for async tasks.");
+            }
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, Config.getAsyncTaskThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "ServerCore-Async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private long newToken() {
+        // Tokens are never reused, a 64-bit sequence doesn't wrap around.
+        return ++lastToken;
+    }
+
+    /**
+     * Cancel a task, does nothing if the task already ran or was cancelled.
+     *
+     * @param token the token of the task.
+     */
+    public void cancelTask(long token) {
+        synchronized (lock) {
+            ScheduledTask remove = this.tasks.remove(token);
+            if (remove == null) return;
+            if (!wheel.remove(remove)) {
+                // Carried over tasks may have moved up a queue.
+                for (ArrayDeque<ScheduledTask> queue : due) {
+                    if (queue.remove(remove)) break;
+                }
+            }
+            if (remove.future != null) remove.future.cancel(false);
+            if (!remove.invalidate(token)) {
+                throw new InternalError("Token of removed task doesn't match requested task token.");
+            }
+        }
+    }
+
+    /**
+     * Get the amount of pending tasks.
+     *
+     * @return the amount of pending tasks.
+     */
+    public int pending() {
+        synchronized (lock) {
+            return tasks.size();
+        }
+    }
+
+    /**
+     * Get the amount of tasks that are due, but not run yet because the tick budget was spent.
+     *
+     * @return the amount of carried over tasks.
+     */
+    public int backlog() {
+        synchronized (lock) {
+            int backlog = 0;
+            for (ArrayDeque<ScheduledTask> queue : due) backlog += queue.size();
+            return backlog;
         }
     }
 
-    public void cancelTask(UUID token) {
-        ScheduledTask remove = this.tasks.remove(token);
-        if (!remove.invalidate(token)) {
-            throw new InternalError("Token of removed task doesn't match requested task token.");
+    long currentTick() {
+        synchronized (lock) {
+            return wheel.now();
         }
     }
 }
@@ -0,0 +1,25 @@
+package com.ultreon.mods.servercore.server;
+
+/**
+ * Priority of a scheduled task.
+ * Due tasks are run in order of priority, and in order of scheduling within a priority.
+ * When the task manager runs out of its tick budget, the remaining tasks are carried over to the next tick.
+ *
+ * @author Qboi123
+ */
+public enum TaskPriority {
+    /**
+     * Always run in the tick the task is due, regardless of the tick budget.
+     */
+    HIGH,
+
+    /**
+     * The default priority.
+     */
+    NORMAL,
+
+    /**
+     * Run after all other due tasks, for work that can be late, like timeouts.
+     */
+    LOW
+}
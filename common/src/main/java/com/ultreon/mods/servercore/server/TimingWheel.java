@@ -0,0 +1,167 @@
+package com.ultreon.mods.servercore.server;
+
+import com.ultreon.mods.servercore.mixin.AntiMixin;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for scheduled tasks.
+ * <p>
+ * The first level has a slot for each of the next 256 ticks, every next level has 64 slots each spanning a full
+ * rotation of the level below. When the lower level wraps around, the next slot of the level above is cascaded down.
+ * Tasks further away than the highest level are kept in an overflow list that is re-sorted once per rotation.
+ * <p>
+ * Tasks are linked into their slot directly, so inserting and removing are O(1) and advancing only touches due tasks.
+ * Not thread-safe, the {@link TaskManager} guards access.
+ *
+ * @author Qboi123
+ */
+@AntiMixin
+final class TimingWheel {
+    private static final int ROOT_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVELS = 4;
+    private static final int OVERFLOW_SHIFT = ROOT_BITS + LEVEL_BITS * (LEVELS - 1);
+    private static final int OVERFLOW = LEVELS;
+
+    private final ScheduledTask[][] slots = new ScheduledTask[LEVELS + 1][];
+    private long now;
+    private int size;
+
+    /**
+     * Create a timing wheel.
+     *
+     * @param now the current tick.
+     */
+    TimingWheel(long now) {
+        this.now = now;
+        slots[0] = new ScheduledTask[1 << ROOT_BITS];
+        for (int level = 1; level < LEVELS; level++) {
+            slots[level] = new ScheduledTask[1 << LEVEL_BITS];
+        }
+        slots[OVERFLOW] = new ScheduledTask[1];
+    }
+
+    /**
+     * Insert a task, its deadline should be after the current tick.
+     *
+     * @param task the task to insert.
+     */
+    void add(ScheduledTask task) {
+        place(task);
+        size++;
+    }
+
+    /**
+     * Remove a task from the wheel.
+     *
+     * @param task the task to remove.
+     * @return whether the task was in the wheel.
+     */
+    boolean remove(ScheduledTask task) {
+        if (task.level < 0) return false;
+        unlink(task);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advance the wheel by one tick.
+     *
+     * @param due receives the tasks due at the new tick.
+     * @return the new tick.
+     */
+    long advance(Consumer<ScheduledTask> due) {
+        long tick = ++now;
+
+        // Cascade from the highest level that wrapped around.
+        if ((tick & ((1L << OVERFLOW_SHIFT) - 1)) == 0) cascade(OVERFLOW, 0);
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = shift(level);
+            if ((tick & ((1L << shift) - 1)) == 0) {
+                cascade(level, (int) (tick >>> shift) & (slots[level].length - 1));
+            }
+        }
+
+        int slot = (int) tick & (slots[0].length - 1);
+        ScheduledTask task = slots[0][slot];
+        slots[0][slot] = null;
+        while (task != null) {
+            ScheduledTask next = task.next;
+            task.level = -1;
+            task.next = null;
+            task.prev = null;
+            size--;
+            due.accept(task);
+            task = next;
+        }
+        return tick;
+    }
+
+    /**
+     * Get the current tick.
+     *
+     * @return the current tick.
+     */
+    long now() {
+        return now;
+    }
+
+    /**
+     * Get the amount of tasks in the wheel.
+     *
+     * @return the amount of tasks.
+     */
+    int size() {
+        return size;
+    }
+
+    private void cascade(int level, int slot) {
+        ScheduledTask task = slots[level][slot];
+        slots[level][slot] = null;
+        while (task != null) {
+            ScheduledTask next = task.next;
+            place(task);
+            task = next;
+        }
+    }
+
+    private void place(ScheduledTask task) {
+        long deadline = task.deadline;
+        int level;
+        int slot;
+        if ((deadline >>> ROOT_BITS) == (now >>> ROOT_BITS)) {
+            level = 0;
+            slot = (int) deadline & (slots[0].length - 1);
+        } else if ((deadline >>> OVERFLOW_SHIFT) != (now >>> OVERFLOW_SHIFT)) {
+            level = OVERFLOW;
+            slot = 0;
+        } else {
+            // Lowest level where the deadline and the current tick share all higher bits.
+            level = 1;
+            while ((deadline >>> shift(level + 1)) != (now >>> shift(level + 1))) level++;
+            slot = (int) (deadline >>> shift(level)) & (slots[level].length - 1);
+        }
+
+        ScheduledTask head = slots[level][slot];
+        task.level = level;
+        task.slot = slot;
+        task.prev = null;
+        task.next = head;
+        if (head != null) head.prev = task;
+        slots[level][slot] = task;
+    }
+
+    private void unlink(ScheduledTask task) {
+        if (task.prev != null) task.prev.next = task.next;
+        else slots[task.level][task.slot] = task.next;
+        if (task.next != null) task.next.prev = task.prev;
+        task.level = -1;
+        task.next = null;
+        task.prev = null;
+    }
+
+    private static int shift(int level) {
+        return ROOT_BITS + LEVEL_BITS * (level - 1);
+    }
+}
@@ -0,0 +1,85 @@
+package com.ultreon.mods.servercore.server.chat;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Clock for the time and date keys of chat messages.
+ * The clock is read at most once per tick, and only in ticks that use it. The formatted values are cached for the tick.
+ *
+ * @since 0.1.0
+ */
+public final class ChatClock {
+    private static volatile long ticks;
+    private static volatile Reading reading = new Reading(-1);
+
+    private ChatClock() {
+        throw new UnsupportedOperationException("Can't instantiate utility class");
+    }
+
+    /**
+     * Advance to the next tick.
+     *
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public static void tick() {
+        ticks++;
+    }
+
+    /**
+     * Get the current UTC time, in ISO-8601 local time format.
+     *
+     * @return the time.
+     * @since 0.1.0
+     */
+    public static String time() {
+        Reading reading = read();
+        String time = reading.time;
+        if (time == null) {
+            time = reading.now.format(DateTimeFormatter.ISO_LOCAL_TIME);
+            reading.time = time;
+        }
+        return time;
+    }
+
+    /**
+     * Get the current UTC date, in ISO-8601 local date format.
+     *
+     * @return the date.
+     * @since 0.1.0
+     */
+    public static String date() {
+        Reading reading = read();
+        String date = reading.date;
+        if (date == null) {
+            date = reading.now.format(DateTimeFormatter.ISO_LOCAL_DATE);
+            reading.date = date;
+        }
+        return date;
+    }
+
+    private static Reading read() {
+        Reading reading = ChatClock.reading;
+        long ticks = ChatClock.ticks;
+        if (reading.tick != ticks) {
+            reading = new Reading(ticks);
+            ChatClock.reading = reading;
+        }
+        return reading;
+    }
+
+    private static final class Reading {
+        final long tick;
+        final ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        volatile String time;
+        volatile String date;
+
+        Reading(long tick) {
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.ultreon.mods.servercore.server.chat;
+
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.TextColor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static net.minecraft.ChatFormatting.*;
+
+/**
+ * Named colors for the {@code <name>} tags of chat messages.
+ * <p>
+ * The names are stored in a perfect hash table, built once when the class is loaded.
+ * A lookup hashes the name, does one displacement lookup and one string comparison, and returns a shared color instance.
+ * Colors that aren't built-in can be supplied per message through {@link ChatContext#color(String, TextColor)}.
+ *
+ * @since 0.1.0
+ */
+public final class ChatColors {
+    private static final int GOLDEN = 0x9e3779b9;
+    private static final Map<String, TextColor> BUILT_IN = new LinkedHashMap<>();
+
+    private static final String[] NAMES;
+    private static final TextColor[] COLORS;
+    private static final int[] DISPLACEMENTS;
+
+    static {
+        color(RED, "mc:red");
+        color(YELLOW, "mc:yellow");
+        color(GREEN, "mc:lime", "mc:green");
+        color(AQUA, "mc:cyan", "mc:aqua");
+        color(BLUE, "mc:blue");
+        color(LIGHT_PURPLE, "mc:magenta", "mc:light-purple");
+        color(DARK_RED, "mc:dark-red");
+        color(GOLD, "mc:gold");
+        color(DARK_GREEN, "mc:dark-green");
+        color(DARK_AQUA, "mc:turquoise", "mc:dark-aqua");
+        color(DARK_BLUE, "mc:dark-blue");
+        color(DARK_PURPLE, "mc:purple", "mc:dark-purple");
+        color(WHITE, "gray-16", "mc:white");
+        color(0xf0f0f0, "gray-15");
+        color(0xe0e0e0, "gray-14");
+        color(0xd0d0d0, "gray-13");
+        color(0xc0c0c0, "gray-12", "light-gray");
+        color(0xb0b0b0, "gray-11");
+        color(0xa0a0a0, "gray-10");
+        color(GRAY, "mc:gray", "mc:silver");
+        color(0x909090, "gray-9");
+        color(0x808080, "gray-8");
+        color(0x707070, "mid-gray", "gray-7");
+        color(0x606060, "gray-6");
+        color(DARK_GRAY, "mc:dark-gray");
+        color(0x505050, "gray-5");
+        color(0x404040, "gray-4");
+        color(0x303030, "darker-gray", "gray-3");
+        color(0x202020, "gray-2");
+        color(0x101010, "gray-1");
+        color(0x000000, "gray-0");
+        color(0xf0f8ff, "alice-blue");
+        color(0xfaebd7, "antique-white");
+        color(0x7fffd4, "aquamarine");
+        color(0xf0ffff, "azure");
+        color(0xf5f5dc, "beige");
+        color(0xffe4c4, "bisque");
+        color(0xffebcd, "blanched-almond");
+        color(BLACK, "black");
+        color(0x8a2be2, "blue-violet");
+        color(0xa52a2a, "brown");
+        color(0xdeb887, "burly-wood");
+        color(0x5f9ea0, "cadet-blue");
+        color(0xd2691e, "chocolate");
+        color(0xff7f50, "coral");
+        color(0x6495ed, "cornflower-blue");
+        color(0xfff8dc, "cornsilk");
+        color(0xdc143c, "crimson");
+        color(0x00ffff, "cyan");
+        color(0x00008b, "dark-blue");
+        color(0x008b8b, "dark-cyan");
+        color(0xb8860b, "dark-golden-rod");
+        color(0xa9a9a9, "dark-grey");
+        color(0x006400, "dark-green");
+        color(0xbdb76b, "dark-khaki");
+        color(0x8b008b, "dark-magenta");
+        color(0x556b2f, "dark-olive-green");
+        color(0xff8c00, "dark-orange");
+        color(0x9932cc, "dark-orchid");
+        color(0x8b0000, "dark-red");
+        color(0xe9967a, "dark-salmon");
+        color(0x8fbc8f, "dark-sea-green");
+        color(0x483d8b, "dark-slate-blue");
+        color(0x2f4f4f, "dark-slate-grey");
+        color(0x00ced1, "dark-turquoise");
+        color(0x9400d3, "dark-violet");
+        color(0x808000, "dark-yellow");
+        color(0xff1493, "deep-pink");
+        color(0x00bfff, "deep-sky-blue");
+        color(0x696969, "dim-gray");
+        color(0x1e90ff, "dodger-blue");
+        color(0xb22222, "fire-brick");
+        color(0xfffaf0, "floral-white");
+        color(0x00FF4F, "folly-red");
+        color(0x228b22, "forest-green");
+        color(0xff00ff, "fuchsia");
+        color(0xdcdcdc, "gainsboro");
+        color(0xf8f8ff, "ghost-white");
+        color(0xffd700, "gold");
+        color(0xdaa520, "golden-rod");
+        color(0x808080, "grey");
+        color(0x008000, "green");
+        color(0xadff2f, "green-yellow");
+        color(0xf0fff0, "honey-dew");
+        color(0xff69b4, "hot-pink", "hot-ping");
+        color(0xcd5c5c, "indian-red");
+        color(0x4b0082, "indigo");
+        color(0xfffff0, "ivory");
+        color(0xf0e68c, "khaki");
+        color(0xe6e6fa, "lavender");
+        color(0xfff0f5, "lavender-blush");
+        color(0x7cfc00, "lawn-green");
+        color(0xfffacd, "lemon-chiffon");
+        color(0xadd8e6, "light-blue");
+        color(0xf08080, "light-coral");
+        color(0xe0ffff, "light-cyan");
+        color(0xfafad2, "light-golden-rod-yellow");
+        color(0xd3d3d3, "light-grey");
+        color(0x90ee90, "light-green");
+        color(0xffb6c1, "light-pink");
+        color(0xffa07a, "light-salmon");
+        color(0x20b2aa, "light-sea-green");
+        color(0x87cefa, "light-sky-blue");
+        color(0x778899, "light-slate-grey");
+        color(0xb0c4de, "light-steel-blue");
+        color(0xffffe0, "light-yellow");
+        color(0x00ff00, "lime");
+        color(0x32cd32, "lime-green");
+        color(0xfaf0e6, "linen");
+        color(0xff00ff, "magenta");
+        color(0x800000, "maroon");
+        color(0x66cdaa, "medium-aqua-marine");
+        color(0x0000cd, "medium-blue");
+        color(0xba55d3, "medium-orchid");
+        color(0x9370d8, "medium-purple");
+        color(0x3cb371, "medium-sea-green");
+        color(0x7b68ee, "medium-slate-blue");
+        color(0x00fa9a, "medium-spring-green");
+        color(0x48d1cc, "medium-turquoise");
+        color(0xc71585, "medium-violet-red");
+        color(0x191970, "midnight-blue");
+        color(0x00FF7F, "mint");
+        color(0xf5fffa, "mint-cream");
+        color(0xffe4e1, "minty-rose");
+        color(0xffe4b5, "moccasin");
+        color(0xffdead, "navajo-white");
+        color(0x000080, "navy");
+        color(0xfdf5e6, "old-lace");
+        color(0x808080, "olive");
+        color(0x6b8e23, "olive-drab");
+        color(0xffa500, "orange");
+        color(0xff4500, "orange-red");
+        color(0xda70d6, "orchid");
+        color(0xeee8aa, "pale-golden-rod");
+        color(0x98bf98, "pale-gree");
+        color(0x98fb98, "pale-green");
+        color(0xafeeee, "pale-turquoise");
+        color(0xd87093, "pale-violet-red");
+        color(0xffefd5, "papaya-whip");
+        color(0xffdab9, "peach-puff");
+        color(0xcd853f, "peru");
+        color(0xffc0cb, "pink");
+        color(0xdda0dd, "plum");
+        color(0xb0e0e6, "powder-blue");
+        color(0xff0000, "red");
+        color(0xbc8f8f, "rosy-brown");
+        color(0x4169e1, "royal-blue");
+        color(0x8b4513, "saddle-brown");
+        color(0xfa8072, "salmon");
+        color(0xfaa460, "sandy-brown");
+        color(0x2e8b57, "sea-green");
+        color(0xfff5ee, "sea-shell");
+        color(0xa0522d, "slenna");
+        color(0xc0c0c0, "silver");
+        color(0x87ceeb, "sky-blue");
+        color(0x6a5acd, "slate-blue");
+        color(0x708090, "slate-grey");
+        color(0xfffafa, "snow");
+        color(0x00ff7f, "spring-green");
+        color(0x4682b4, "sleet-blue");
+        color(0xd2b48c, "tan");
+        color(0x008080, "teal");
+        color(0xd8bfd8, "thistle");
+        color(0xff6347, "tomato");
+        color(0x40e0d0, "turquoise");
+        color(0xff7f00, "ultreon");
+        color(0xee82ee, "violet");
+        color(0xf5deb3, "wheat");
+        color(0xffffff, "white");
+        color(0xf5f5f5, "white-smoke");
+        color(0xffff00, "yellow");
+        color(0x9acd32, "yellow-green");
+        color(0xffd500, "yellow-gold");
+        color(0x61AFEF, "code:method");
+        color(0x2BBAC5, "code:string-escape");
+        color(0x89CA78, "code:string");
+        color(0xE5C07B, "code:class");
+        color(0xD19A66, "code:number");
+        color(0xEF596F, "code:enum-value");
+        color(0xD55FDE, "code:keyword");
+
+        int size = Integer.highestOneBit(BUILT_IN.size() * 2 - 1);
+        NAMES = new String[size];
+        COLORS = new TextColor[size];
+        DISPLACEMENTS = new int[size / 2];
+        build();
+    }
+
+    private ChatColors() {
+        throw new UnsupportedOperationException("Can't instantiate utility class");
+    }
+
+    /**
+     * Get a built-in color by name.
+     *
+     * @param name the color name, for example {@code mc:gold}, {@code gray-8} or {@code cornflower-blue}.
+     * @return the color, or null if there's no built-in color with that name.
+     * @since 0.1.0
+     */
+    @Nullable
+    public static TextColor get(@NotNull String name) {
+        int hash = mix(name.hashCode());
+        int slot = slot(hash, DISPLACEMENTS[hash & (DISPLACEMENTS.length - 1)]);
+        return name.equals(NAMES[slot]) ? COLORS[slot] : null;
+    }
+
+    /**
+     * Get all built-in color names.
+     *
+     * @return an unmodifiable set of the names, in registration order.
+     * @since 0.1.0
+     */
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(BUILT_IN.keySet());
+    }
+
+    private static void color(ChatFormatting formatting, String... names) {
+        color(Objects.requireNonNull(TextColor.fromLegacyFormat(formatting), "Formatting is not a color"), names);
+    }
+
+    private static void color(int rgb, String... names) {
+        color(TextColor.fromRgb(rgb), names);
+    }
+
+    private static void color(TextColor color, String... names) {
+        for (String name : names) {
+            if (BUILT_IN.put(name, color) != null) throw new IllegalStateException("Duplicate color name: " + name);
+        }
+    }
+
+    /**
+     * Build the table, hash and displace: names are grouped in buckets by hash,
+     * and for every bucket, largest first, a displacement is searched that puts all its names in free slots.
+     */
+    private static void build() {
+        List<List<String>> buckets = new ArrayList<>();
+        for (int i = 0; i < DISPLACEMENTS.length; i++) buckets.add(new ArrayList<>());
+        for (String name : BUILT_IN.keySet()) {
+            buckets.get(mix(name.hashCode()) & (DISPLACEMENTS.length - 1)).add(name);
+        }
+
+        Integer[] order = new Integer[buckets.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt(i -> -buckets.get(i).size()));
+
+        int[] slots = new int[BUILT_IN.size()];
+        for (int bucket : order) {
+            List<String> names = buckets.get(bucket);
+            if (names.isEmpty()) break;
+
+            search:
+            for (int displacement = 1; ; displacement++) {
+                for (int i = 0; i < names.size(); i++) {
+                    int slot = slot(mix(names.get(i).hashCode()), displacement);
+                    if (NAMES[slot] != null) continue search;
+                    for (int j = 0; j < i; j++) {
+                        if (slots[j] == slot) continue search;
+                    }
+                    slots[i] = slot;
+                }
+
+                for (int i = 0; i < names.size(); i++) {
+                    NAMES[slots[i]] = names.get(i);
+                    COLORS[slots[i]] = BUILT_IN.get(names.get(i));
+                }
+                DISPLACEMENTS[bucket] = displacement;
+                break;
+            }
+        }
+    }
+
+    private static int slot(int hash, int displacement) {
+        return mix(hash ^ displacement * GOLDEN) & (NAMES.length - 1);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ hash >>> 16;
+    }
+}
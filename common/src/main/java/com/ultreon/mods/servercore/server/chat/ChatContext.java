@@ -21,6 +21,7 @@ public class ChatContext {
 
     /**
      * Add a key &amp; value.
+     * The value is supplied lazily, only if the key is used, and at most once per render.
      *
      * @param key   the key.
      * @param value the value.
@@ -0,0 +1,184 @@
+package com.ultreon.mods.servercore.server.chat;
+
+import com.ultreon.mods.servercore.server.config.Config;
+import com.ultreon.mods.servercore.server.event.ChatContextEvent;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
+import com.ultreon.mods.servercore.server.metrics.Timer;
+import com.ultreon.mods.servercore.server.state.ServerStateManager;
+import net.minecraft.server.level.ServerPlayer;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chat message processing shared between the chat events.
+ * <p>
+ * A message is formatted once with the context of the player that sent it, the context is only built if the message uses it.
+ * The receive and decorate events of the same message reuse the results, whichever of them comes first does the work.
+ * Results are kept for a few ticks only.
+ * <p>
+ * With async chat enabled in the config, messages are parsed and rendered on a bounded pool of worker threads.
+ * The chat decorator of the server returns the future results, and the server broadcasts the message on its own thread once they're done.
+ * The context is then a snapshot of the player taken on the thread that submits the message,
+ * so the workers don't read the player or the state manager for keys.
+ * The snapshot is only taken if the message can refer to the context at all.
+ * When the queue of the pool is full, the submitting thread formats the message itself.
+ *
+ * @since 0.1.0
+ */
+@ApiStatus.Internal
+public final class ChatPipeline {
+    private static final int EXPIRE_TICKS = 20;
+    private static final int QUEUE_SIZE = 256;
+    private static final ChatContext EMPTY_CONTEXT = new ChatContext();
+    private static final Timer PIPELINE_TIME = Metrics.timer("chat.pipeline");
+
+    private final Map<Key, Entry> processed = new ConcurrentHashMap<>();
+    private volatile long ticks;
+    private ExecutorService executor;
+
+    /**
+     * Get the results of a chat message, formatting it if it wasn't yet.
+     * The returned future is already completed unless async chat is enabled.
+     *
+     * @param manager the server state manager.
+     * @param player  the player that sent the message.
+     * @param message the raw message.
+     * @return the future format results.
+     * @since 0.1.0
+     */
+    public CompletableFuture<ChatFormatter.Results> submit(ServerStateManager manager, ServerPlayer player, String message) {
+        return processed.computeIfAbsent(new Key(player.getUUID(), message),
+                key -> new Entry(format(manager, player, message), ticks)).results;
+    }
+
+    /**
+     * Get the results of a chat message, formatting it if it wasn't yet.
+     * Waits for the results if the message is being formatted asynchronously.
+     *
+     * @param manager the server state manager.
+     * @param player  the player that sent the message.
+     * @param message the raw message.
+     * @return the format results.
+     * @since 0.1.0
+     */
+    public ChatFormatter.Results process(ServerStateManager manager, ServerPlayer player, String message) {
+        return submit(manager, player, message).join();
+    }
+
+    /**
+     * Expire old results.
+     *
+     * @since 0.1.0
+     */
+    public void tick() {
+        long expired = ++ticks - EXPIRE_TICKS;
+        if (processed.isEmpty()) return;
+        processed.values().removeIf(entry -> entry.tick < expired);
+    }
+
+    /**
+     * Remove all results, and stop the worker threads.
+     * Messages that are still being formatted are finished first.
+     *
+     * @since 0.1.0
+     */
+    public void close() {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        processed.clear();
+    }
+
+    private CompletableFuture<ChatFormatter.Results> format(ServerStateManager manager, ServerPlayer player, String message) {
+        if (!Config.isAsyncChat()) {
+            return CompletableFuture.completedFuture(formatNow(manager, player, message));
+        }
+        ChatContext context = mayUseContext(message) ? context(manager, player, true) : EMPTY_CONTEXT;
+        return CompletableFuture.supplyAsync(() -> {
+            long start = PIPELINE_TIME.start();
+            try {
+                return ChatTemplate.compile(message).render(context);
+            } finally {
+                PIPELINE_TIME.stop(start);
+            }
+        }, executor());
+    }
+
+    private static ChatFormatter.Results formatNow(ServerStateManager manager, ServerPlayer player, String message) {
+        long start = PIPELINE_TIME.start();
+        try {
+            ChatTemplate template = ChatTemplate.compile(message);
+            if (!template.usesContext()) {
+                return template.render(EMPTY_CONTEXT);
+            }
+            return template.render(context(manager, player, false));
+        } finally {
+            PIPELINE_TIME.stop(start);
+        }
+    }
+
+    private static boolean mayUseContext(String message) {
+        // Keys start with a percent sign, context colors are in tags. Cheaper than compiling on the submitting thread.
+        return message.indexOf('%') >= 0 || message.indexOf('<') >= 0;
+    }
+
+    private static ChatContext context(ServerStateManager manager, ServerPlayer player, boolean snapshot) {
+        ChatContext context;
+        if (snapshot) {
+            String position = "x" + player.getBlockX() + ", y" + player.getBlockY() + ", z" + player.getBlockZ();
+            context = new ChatContext()
+                    .key("username", player.getName().getString())
+                    .key("display-getObjName", player.getDisplayName().getString())
+                    .key("rank-getObjName", manager.player(player).getDisplayProfile().rank().getName())
+                    .key("getObjPos", position);
+        } else {
+            // Keys are only supplied when the message uses them.
+            context = new ChatContext()
+                    .key("username", () -> player.getName().getString())
+                    .key("display-getObjName", () -> player.getDisplayName().getString())
+                    .key("rank-getObjName", () -> manager.player(player).getHighestRank().getName())
+                    .key("getObjPos", () -> "x" + player.getBlockX() + ", y" + player.getBlockY() + ", z" + player.getBlockZ());
+        }
+        context.key("time", ChatClock::time)
+                .key("date", ChatClock::date);
+
+        ChatContextEvent.EVENT.invoker().onChatContext(context, player);
+        return context;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            int threads = Math.max(1, Config.getAsyncChatThreads());
+            AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+                Thread thread = new Thread(runnable, "ServerCore-Chat-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+
+    private record Key(UUID player, String message) {
+
+    }
+
+    private record Entry(CompletableFuture<ChatFormatter.Results> results, long tick) {
+
+    }
+}
@@ -0,0 +1,288 @@
+package com.ultreon.mods.servercore.server.chat;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
+import com.ultreon.mods.servercore.server.metrics.Timer;
+import com.ultreon.mods.servercore.server.state.ServerStateManager;
+import net.minecraft.network.chat.*;
+import net.minecraft.server.level.ServerPlayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compiled chat template.
+ * <p>
+ * The template text is parsed once into a list of text runs with precomputed styles.
+ * Rendering only substitutes the context keys and resolves mentions, runs without those are built once and shared.
+ * Compiled templates are cached by their text, so formatting the same text again skips parsing.
+ *
+ * @since 0.1.0
+ */
+public final class ChatTemplate {
+    static final int DO_PING = 1;
+    static final int ONLY_FORMAT = 2;
+    static final int ONLY_KEYS = 4;
+    static final int DISABLE_FUNCS = 8;
+
+    private static final int CACHE_SIZE = 1024;
+    private static final Cache<CacheKey, ChatTemplate> CACHE = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+    static final ChatTemplate ERROR = new ChatTemplate(List.of(), 0, 0, List.of(), true);
+    private static final Timer COMPILE_TIME = Metrics.timer("chat.compile");
+
+    private final Run[] runs;
+    private final int slots;
+    private final int keys;
+    private final String[] colors;
+    private final boolean error;
+    @Nullable
+    private final MutableComponent constant;
+
+    ChatTemplate(List<Run> runs, int slots, int keys, Collection<String> colors, boolean error) {
+        this.runs = runs.toArray(Run[]::new);
+        this.slots = slots;
+        this.keys = keys;
+        this.colors = colors.toArray(String[]::new);
+        this.error = error;
+
+        MutableComponent constant = error || this.colors.length > 0 ? null : Component.empty();
+        for (int i = 0; i < this.runs.length && constant != null; i++) {
+            if (this.runs[i].component == null) constant = null;
+            else constant.append(this.runs[i].component);
+        }
+        this.constant = constant;
+    }
+
+    /**
+     * Get the compiled template for a message, with pings enabled.
+     *
+     * @param template the template text.
+     * @return the compiled template.
+     * @since 0.1.0
+     */
+    public static ChatTemplate compile(String template) {
+        return compile(template, true, false);
+    }
+
+    /**
+     * Get the compiled template for a message.
+     *
+     * @param template   the template text.
+     * @param doPing     whether to ping people.
+     * @param onlyFormat whether to only allow formatting like colors, bold, italic, etc.
+     * @return the compiled template.
+     * @since 0.1.0
+     */
+    public static ChatTemplate compile(String template, boolean doPing, boolean onlyFormat) {
+        return compile(template, (doPing ? DO_PING : 0) | (onlyFormat ? ONLY_FORMAT : 0));
+    }
+
+    static ChatTemplate compile(String template, int flags) {
+        CacheKey key = new CacheKey(template, flags);
+        ChatTemplate compiled = CACHE.getIfPresent(key);
+        if (compiled == null) {
+            long start = COMPILE_TIME.start();
+            compiled = new ChatFormatter(template, flags).compile();
+            COMPILE_TIME.stop(start);
+            CACHE.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Render the template.
+     *
+     * @param context context to use for keys / custom colors.
+     * @return the format results.
+     * @since 0.1.0
+     */
+    public ChatFormatter.Results render(ChatContext context) {
+        if (error) return new ChatFormatter.Results(ChatFormatter.ERROR, new ArrayList<>(), true);
+        if (constant != null) return new ChatFormatter.Results(constant.copy(), new ArrayList<>(), false);
+
+        // Same as unknown built-in colors, context colors that are missing are an error wherever they're used.
+        for (String color : colors) {
+            if (!context.colorMap.containsKey(color)) return new ChatFormatter.Results(ChatFormatter.ERROR, new ArrayList<>(), true);
+        }
+
+        MutableComponent output = Component.empty();
+        List<ServerPlayer> pinged = new ArrayList<>();
+        Style[] styles = slots == 0 ? null : new Style[slots];
+        String[] values = keys == 0 ? null : new String[keys];
+        StringBuilder builder = new StringBuilder();
+        for (Run run : runs) {
+            if (run.component != null) {
+                output.append(run.component);
+                continue;
+            }
+
+            for (Part part : run.parts) {
+                if (part instanceof Text text) {
+                    builder.append(text.text);
+                } else if (part instanceof Key key) {
+                    // Every key is supplied at most once per render, and only if it's used.
+                    String value = values[key.slot];
+                    if (value == null) {
+                        Supplier<@NotNull String> stringSupplier = context.keyMap.get(key.key);
+                        try {
+                            value = stringSupplier == null ? "" : stringSupplier.get();
+                        } catch (Exception e) {
+                            return new ChatFormatter.Results(ChatFormatter.ERROR, pinged, true);
+                        }
+                        values[key.slot] = value;
+                    }
+                    builder.append(value);
+                } else if (part instanceof Mention mention) {
+                    MutableComponent component = mention(mention.name, builder, pinged);
+                    if (component != null) {
+                        Style style = resolve(mention.style, context, styles);
+                        if (style == null) return new ChatFormatter.Results(ChatFormatter.ERROR, pinged, true);
+                        append(output, builder, style);
+                        output.append(component);
+                    }
+                }
+            }
+
+            Style style = resolve(run.style, context, styles);
+            if (style == null) return new ChatFormatter.Results(ChatFormatter.ERROR, pinged, true);
+            append(output, builder, style);
+        }
+        return new ChatFormatter.Results(output, pinged, false);
+    }
+
+    /**
+     * Check if the template renders the same for every context.
+     *
+     * @return whether the template is constant.
+     * @since 0.1.0
+     */
+    public boolean isConstant() {
+        return error || constant != null;
+    }
+
+    /**
+     * Check if rendering the template uses the context, for keys or context colors.
+     * If not, the context doesn't need to be built.
+     *
+     * @return whether the template uses the context.
+     * @since 0.1.0
+     */
+    public boolean usesContext() {
+        // Styles get a slot for context colors, and for click and hover events with keys.
+        return keys > 0 || slots > 0 || colors.length > 0;
+    }
+
+    /**
+     * Check if the template has a syntax error.
+     *
+     * @return whether the template is erroneous.
+     * @since 0.1.0
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    private static void append(MutableComponent output, StringBuilder builder, Style style) {
+        if (builder.isEmpty()) return;
+        output.append(Component.literal(builder.toString()).setStyle(style));
+        builder.setLength(0);
+    }
+
+    /**
+     * Resolve the style of a run.
+     *
+     * @return the style, or null if the context color couldn't be supplied.
+     */
+    @Nullable
+    private static Style resolve(StyleRef ref, ChatContext context, Style[] styles) {
+        if (ref.slot < 0) return ref.base;
+
+        Style style = styles[ref.slot];
+        if (style == null) {
+            style = ref.base;
+            if (ref.color != null) {
+                try {
+                    style = style.withColor(context.colorMap.get(ref.color).get());
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+            if (ref.click != null) style = style.withClickEvent(ref.click.render(context));
+            if (ref.hover != null) style = style.withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, ref.hover.render(context).output()));
+            styles[ref.slot] = style;
+        }
+        return style;
+    }
+
+    @Nullable
+    private static MutableComponent mention(String name, StringBuilder builder, List<ServerPlayer> pinged) {
+        ServerStateManager manager = ServerStateManager.get();
+        if (manager == null) {
+            return null;
+        }
+
+        MentionResolver mentions = manager.mentions();
+        ServerPlayer player = mentions.find(name);
+        if (player == null || player.isInvisible()) {
+            builder.append('@').append(name);
+            return null;
+        }
+        pinged.add(player);
+        return mentions.mention(manager, player);
+    }
+
+    private record CacheKey(String template, int flags) {
+
+    }
+
+    /**
+     * A run of text in one style.
+     * The component is prebuilt when the text and style don't depend on the context.
+     */
+    record Run(Part[] parts, StyleRef style, @Nullable MutableComponent component) {
+        static Run of(List<Part> parts, StyleRef style) {
+            if (parts.size() == 1 && parts.get(0) instanceof Text text && style.slot < 0) {
+                return new Run(parts.toArray(Part[]::new), style, Component.literal(text.text).setStyle(style.base));
+            }
+            return new Run(parts.toArray(Part[]::new), style, null);
+        }
+    }
+
+    /**
+     * Style of a run.
+     * Context colors, and click and hover events with context keys are resolved once per render, and stored in the slot.
+     */
+    record StyleRef(Style base, @Nullable String color, @Nullable Click click, @Nullable ChatTemplate hover, int slot) {
+
+    }
+
+    record Click(ClickEvent.Action action, String prefix, ChatTemplate contents) {
+        ClickEvent render(ChatContext context) {
+            return new ClickEvent(action, prefix + contents.render(context).string());
+        }
+    }
+
+    sealed interface Part permits Text, Key, Mention {
+
+    }
+
+    record Text(String text) implements Part {
+
+    }
+
+    record Key(String key, int slot) implements Part {
+
+    }
+
+    /**
+     * A mention, text before a resolved mention is appended in the style at the mention.
+     */
+    record Mention(String name, StyleRef style) implements Part {
+
+    }
+}
@@ -0,0 +1,108 @@
+package com.ultreon.mods.servercore.server.chat;
+
+import com.ultreon.mods.servercore.server.state.ServerStateManager;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.server.level.ServerPlayer;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.minecraft.ChatFormatting.*;
+
+/**
+ * Resolves {@code @name} mentions in chat.
+ * <p>
+ * Online players are indexed by their lowercase name, so a mention is one map lookup instead of a scan of the player list.
+ * The mention component of a player is built once, and rebuilt when the display name or the ranks of the player change.
+ *
+ * @since 0.1.0
+ */
+@ApiStatus.Internal
+public final class MentionResolver {
+    private final Map<String, ServerPlayer> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, Mention> mentions = new ConcurrentHashMap<>();
+
+    /**
+     * Add a player that joined to the index.
+     *
+     * @param player the player that joined.
+     * @since 0.1.0
+     */
+    public void onJoin(ServerPlayer player) {
+        byName.put(key(player.getGameProfile().getName()), player);
+    }
+
+    /**
+     * Remove a player that quit from the index.
+     *
+     * @param player the player that quit.
+     * @since 0.1.0
+     */
+    public void onQuit(ServerPlayer player) {
+        byName.remove(key(player.getGameProfile().getName()), player);
+        mentions.remove(player.getUUID());
+    }
+
+    /**
+     * Find an online player by name, ignoring case.
+     *
+     * @param name the name of the player.
+     * @return the player, or null if there's no online player with that name.
+     * @since 0.1.0
+     */
+    @Nullable
+    public ServerPlayer find(String name) {
+        return byName.get(key(name));
+    }
+
+    /**
+     * Get the mention component of a player.
+     *
+     * @param manager the server state manager.
+     * @param player  the mentioned player.
+     * @return a copy of the mention component.
+     * @since 0.1.0
+     */
+    public MutableComponent mention(ServerStateManager manager, ServerPlayer player) {
+        String displayName = ChatFormatting.stripFormatting(player.getDisplayName().getString());
+        Mention mention = mentions.get(player.getUUID());
+        if (mention == null || !mention.displayName.equals(displayName)) {
+            mention = new Mention(displayName, build(manager, player, displayName));
+            mentions.put(player.getUUID(), mention);
+        }
+        return mention.component.copy();
+    }
+
+    /**
+     * Drop the mention component of a player, it will be rebuilt when mentioned next.
+     *
+     * @param player the uuid of the player.
+     * @since 0.1.0
+     */
+    public void invalidate(UUID player) {
+        mentions.remove(player);
+    }
+
+    private static MutableComponent build(ServerStateManager manager, ServerPlayer player, String displayName) {
+        MutableComponent component = Component.literal(displayName + "\n").withStyle(BLUE)
+                .append(Component.literal("Rank: " + manager.player(player).getHighestRank().getName()).withStyle(GRAY))
+                .append(Component.literal(String.valueOf(player.getUUID())).withStyle(DARK_GRAY));
+        return Component.literal("@" + displayName)
+                .withStyle(style -> style.withColor(0x3495eb).withUnderlined(true).withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, component)));
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private record Mention(String displayName, MutableComponent component) {
+
+    }
+}
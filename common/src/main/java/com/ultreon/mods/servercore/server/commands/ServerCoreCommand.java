@@ -12,10 +12,10 @@ import com.ultreon.mods.servercore.common.ThrowConsumer;
 import com.ultreon.mods.servercore.server.DefaultRank;
 import com.ultreon.mods.servercore.server.Permission;
 import com.ultreon.mods.servercore.server.Rank;
-import com.ultreon.mods.servercore.server.chat.ChatContext;
-import com.ultreon.mods.servercore.server.chat.ChatFormatter;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
 import com.ultreon.mods.servercore.server.state.ServerPlayerState;
 import com.ultreon.mods.servercore.server.state.ServerStateManager;
+import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandRuntimeException;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
@@ -44,6 +44,9 @@ public class ServerCoreCommand {
                         .then(Commands.literal("top").fork(TopCommand.getCommand(), context -> List.of(context.getSource())))
                         .then(Commands.literal("gm").fork(GmCommand.getCommand(), context -> List.of(context.getSource())))
                         .then(Commands.literal("sudo").fork(SudoCommand.getCommand(), context -> List.of(context.getSource())))
+                ).then(Commands.literal("metrics")
+                        .requires(commandSourceStack -> ServerStateManager.get() != null && ServerStateManager.get().hasPermission(commandSourceStack, "servercore.metrics"))
+                        .executes(ServerCoreCommand::showMetrics)
                 ).then(Commands.literal("user")
                         .then(Commands.argument("user", GameProfileArgument.gameProfile())
                                 .then(Commands.literal("perms")
@@ -186,6 +189,16 @@ public class ServerCoreCommand {
         );
     }
 
+    private static int showMetrics(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        List<String> lines = Metrics.dump();
+        source.sendSuccess(Component.translatable("command.servercore.metrics.header"), false);
+        for (String line : lines) {
+            source.sendSuccess(Component.literal(line).withStyle(ChatFormatting.GRAY), false);
+        }
+        return lines.size();
+    }
+
     private static int setNameOfRank(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
         String rankId = StringArgumentType.getString(context, "rank");
         String name = StringArgumentType.getString(context, "value");
@@ -204,10 +217,9 @@ public class ServerCoreCommand {
         String prefix = StringArgumentType.getString(context, "value");
         ServerStateManager manager = ServerStateManager.get();
         if (manager != null && manager.hasRank(rankId)) {
-            ChatFormatter formatter = new ChatFormatter(prefix, new ChatContext(), false, true);
-            ChatFormatter.Results prefixFormatted = formatter.format();
-            manager.getRank(rankId).setPrefix(prefix);
-            context.getSource().sendSuccess(Component.translatable("command.servercore.ranks.prefix_set", rankId, prefixFormatted.output()), true);
+            Rank rank = manager.getRank(rankId);
+            rank.setPrefix(prefix);
+            context.getSource().sendSuccess(Component.translatable("command.servercore.ranks.prefix_set", rankId, rank.getPrefixComponent()), true);
             return 1;
         } else {
             throw new SimpleCommandExceptionType(Component.translatable("command.servercore.ranks.not_found", rankId)).create();
@@ -254,7 +266,7 @@ public class ServerCoreCommand {
         String permissionId = StringArgumentType.getString(context, "permission");
         ServerStateManager manager = ServerStateManager.get();
         if (manager != null && manager.hasRank(rankId)) {
-            manager.getRank(rankId).addPermission(new Permission(permissionId));
+            manager.getRank(rankId).addPermission(Permission.of(permissionId));
             return 1;
         } else {
             throw new SimpleCommandExceptionType(Component.translatable("command.servercore.ranks.not_found", rankId)).create();
@@ -266,7 +278,7 @@ public class ServerCoreCommand {
         String permissionId = StringArgumentType.getString(context, "permission");
         ServerStateManager manager = ServerStateManager.get();
         if (manager != null && manager.hasRank(rankId)) {
-            manager.getRank(rankId).removePermission(new Permission(permissionId));
+            manager.getRank(rankId).removePermission(Permission.lookup(permissionId));
             return 1;
         } else {
             throw new SimpleCommandExceptionType(Component.translatable("command.servercore.ranks.not_found", rankId)).create();
@@ -316,14 +328,14 @@ public class ServerCoreCommand {
     private static int addPermission(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
         return executeUser(context, state -> {
             String permissionId = StringArgumentType.getString(context, "permission");
-            state.addPermission(new Permission(permissionId));
+            state.addPermission(Permission.of(permissionId));
         });
     }
 
     private static int removePermission(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
         return executeUser(context, state -> {
             String permissionId = StringArgumentType.getString(context, "permission");
-            state.removePermission(new Permission(permissionId));
+            state.removePermission(Permission.lookup(permissionId));
         });
     }
 
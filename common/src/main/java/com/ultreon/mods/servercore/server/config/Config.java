@@ -3,6 +3,7 @@ package com.ultreon.mods.servercore.server.config;
 import com.ultreon.mods.servercore.util.SnbtIo;
 import dev.architectury.platform.Platform;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.io.File;
@@ -25,6 +26,14 @@ public class Config {
     //**************//
     private static int teleportDelay = 20 * 10; // 10 seconds.
     private static int teleportTimeout = 20 * 15; // 15 seconds.
+    private static int maxCachedPlayers = 1000;
+    private static int maxPlayerIdleTime = 20 * 60 * 10; // 10 minutes.
+    private static boolean asyncChat = false;
+    private static int asyncChatThreads = 2;
+    private static int metricsLogInterval = 0; // Disabled.
+    private static int taskTickBudget = 0; // Unlimited.
+    private static int asyncTaskThreads = 2;
+    private static boolean asyncTaskVirtualThreads = false;
 
     public static int getTeleportDelay() {
         return teleportDelay;
@@ -42,6 +51,70 @@ public class Config {
         Config.teleportTimeout = teleportTimeout;
     }
 
+    public static int getMaxCachedPlayers() {
+        return maxCachedPlayers;
+    }
+
+    public static void setMaxCachedPlayers(int maxCachedPlayers) {
+        Config.maxCachedPlayers = maxCachedPlayers;
+    }
+
+    public static int getMaxPlayerIdleTime() {
+        return maxPlayerIdleTime;
+    }
+
+    public static void setMaxPlayerIdleTime(int maxPlayerIdleTime) {
+        Config.maxPlayerIdleTime = maxPlayerIdleTime;
+    }
+
+    public static boolean isAsyncChat() {
+        return asyncChat;
+    }
+
+    public static void setAsyncChat(boolean asyncChat) {
+        Config.asyncChat = asyncChat;
+    }
+
+    public static int getAsyncChatThreads() {
+        return asyncChatThreads;
+    }
+
+    public static void setAsyncChatThreads(int asyncChatThreads) {
+        Config.asyncChatThreads = asyncChatThreads;
+    }
+
+    public static int getMetricsLogInterval() {
+        return metricsLogInterval;
+    }
+
+    public static void setMetricsLogInterval(int metricsLogInterval) {
+        Config.metricsLogInterval = metricsLogInterval;
+    }
+
+    public static int getTaskTickBudget() {
+        return taskTickBudget;
+    }
+
+    public static void setTaskTickBudget(int taskTickBudget) {
+        Config.taskTickBudget = taskTickBudget;
+    }
+
+    public static int getAsyncTaskThreads() {
+        return asyncTaskThreads;
+    }
+
+    public static void setAsyncTaskThreads(int asyncTaskThreads) {
+        Config.asyncTaskThreads = asyncTaskThreads;
+    }
+
+    public static boolean isAsyncTaskVirtualThreads() {
+        return asyncTaskVirtualThreads;
+    }
+
+    public static void setAsyncTaskVirtualThreads(boolean asyncTaskVirtualThreads) {
+        Config.asyncTaskVirtualThreads = asyncTaskVirtualThreads;
+    }
+
     //************************//
     //     Internal stuff     //
     //************************//
@@ -94,6 +167,30 @@ public class Config {
         teleportation.putInt("requestTimeout", teleportTimeout);
         nbt.put("Teleportation", teleportation);
 
+        CompoundTag cache = new CompoundTag();
+
+        cache.putInt("maxPlayers", maxCachedPlayers);
+        cache.putInt("maxIdleTime", maxPlayerIdleTime);
+        nbt.put("Cache", cache);
+
+        CompoundTag chat = new CompoundTag();
+
+        chat.putBoolean("async", asyncChat);
+        chat.putInt("asyncThreads", asyncChatThreads);
+        nbt.put("Chat", chat);
+
+        CompoundTag metrics = new CompoundTag();
+
+        metrics.putInt("logInterval", metricsLogInterval);
+        nbt.put("Metrics", metrics);
+
+        CompoundTag tasks = new CompoundTag();
+
+        tasks.putInt("tickBudgetNanos", taskTickBudget);
+        tasks.putInt("asyncThreads", asyncTaskThreads);
+        tasks.putBoolean("asyncVirtualThreads", asyncTaskVirtualThreads);
+        nbt.put("Tasks", tasks);
+
         return nbt;
     }
 
@@ -102,5 +199,22 @@ public class Config {
         CompoundTag teleportation = nbt.getCompound("Teleportation");
         teleportDelay = teleportation.getInt("delay");
         teleportTimeout = teleportation.getInt("requestTimeout");
+
+        // Added later, keep the defaults for older configs.
+        CompoundTag cache = nbt.getCompound("Cache");
+        if (cache.contains("maxPlayers", Tag.TAG_INT)) maxCachedPlayers = cache.getInt("maxPlayers");
+        if (cache.contains("maxIdleTime", Tag.TAG_INT)) maxPlayerIdleTime = cache.getInt("maxIdleTime");
+
+        CompoundTag chat = nbt.getCompound("Chat");
+        if (chat.contains("async", Tag.TAG_BYTE)) asyncChat = chat.getBoolean("async");
+        if (chat.contains("asyncThreads", Tag.TAG_INT)) asyncChatThreads = chat.getInt("asyncThreads");
+
+        CompoundTag metrics = nbt.getCompound("Metrics");
+        if (metrics.contains("logInterval", Tag.TAG_INT)) metricsLogInterval = metrics.getInt("logInterval");
+
+        CompoundTag tasks = nbt.getCompound("Tasks");
+        if (tasks.contains("tickBudgetNanos", Tag.TAG_INT)) taskTickBudget = tasks.getInt("tickBudgetNanos");
+        if (tasks.contains("asyncThreads", Tag.TAG_INT)) asyncTaskThreads = tasks.getInt("asyncThreads");
+        if (tasks.contains("asyncVirtualThreads", Tag.TAG_BYTE)) asyncTaskVirtualThreads = tasks.getBoolean("asyncVirtualThreads");
     }
 }
@@ -0,0 +1,57 @@
+package com.ultreon.mods.servercore.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter metric.
+ * Incrementing is contention free and doesn't allocate.
+ *
+ * @since 0.1.0
+ */
+public final class Counter implements Metric {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Increment the counter by one.
+     *
+     * @since 0.1.0
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Add to the counter.
+     *
+     * @param amount the amount to add.
+     * @since 0.1.0
+     */
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * Get the current count.
+     *
+     * @return the count.
+     * @since 0.1.0
+     */
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String describe() {
+        return String.valueOf(get());
+    }
+}
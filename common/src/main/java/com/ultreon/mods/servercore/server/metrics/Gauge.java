@@ -0,0 +1,38 @@
+package com.ultreon.mods.servercore.server.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Gauge metric, reads a value that is tracked elsewhere when the metrics are shown.
+ *
+ * @since 0.1.0
+ */
+public final class Gauge implements Metric {
+    private final String name;
+    private final LongSupplier value;
+
+    Gauge(String name, LongSupplier value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    /**
+     * Get the current value.
+     *
+     * @return the value.
+     * @since 0.1.0
+     */
+    public long get() {
+        return value.getAsLong();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String describe() {
+        return String.valueOf(get());
+    }
+}
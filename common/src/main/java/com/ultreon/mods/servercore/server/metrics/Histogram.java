@@ -0,0 +1,129 @@
+package com.ultreon.mods.servercore.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram metric of non-negative values.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is split in 8 buckets, so percentiles are within 12.5% of the real value.
+ * The buckets are fixed, so recording a value is a few atomic increments and never allocates.
+ *
+ * @since 0.1.0
+ */
+public class Histogram implements Metric {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record a value, negative values are recorded as zero.
+     *
+     * @param value the value to record.
+     * @since 0.1.0
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Get the amount of recorded values.
+     *
+     * @return the count.
+     * @since 0.1.0
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded.
+     * @since 0.1.0
+     */
+    public double mean() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Get the highest recorded value.
+     *
+     * @return the maximum.
+     * @since 0.1.0
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Get the value at a percentile, the highest value of the bucket the percentile falls in.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the value at the percentile, or 0 if nothing was recorded.
+     * @since 0.1.0
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += buckets.get(i);
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) return Math.min(lowerBound(i + 1) - 1, max());
+        }
+        return max();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String describe() {
+        return "count=" + count() + ", mean=" + format(Math.round(mean())) + ", p50=" + format(percentile(50))
+                + ", p99=" + format(percentile(99)) + ", max=" + format(max());
+    }
+
+    /**
+     * Format a recorded value for {@link #describe()}.
+     *
+     * @param value the value.
+     * @return the formatted value.
+     */
+    String format(long value) {
+        return String.valueOf(value);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB_COUNT) return index;
+        if (index >= BUCKETS) return Long.MAX_VALUE;
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        return (long) (SUB_COUNT + index % SUB_COUNT) << (exponent - SUB_BITS);
+    }
+}
@@ -0,0 +1,24 @@
+package com.ultreon.mods.servercore.server.metrics;
+
+/**
+ * A metric in the {@link Metrics} registry.
+ *
+ * @since 0.1.0
+ */
+public interface Metric {
+    /**
+     * Get the name of the metric.
+     *
+     * @return the name.
+     * @since 0.1.0
+     */
+    String name();
+
+    /**
+     * Describe the current value of the metric, for the metrics command and the log.
+     *
+     * @return the description.
+     * @since 0.1.0
+     */
+    String describe();
+}
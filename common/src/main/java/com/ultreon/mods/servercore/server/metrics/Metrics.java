@@ -0,0 +1,130 @@
+package com.ultreon.mods.servercore.server.metrics;
+
+import com.ultreon.mods.servercore.ServerCore;
+import com.ultreon.mods.servercore.server.config.Config;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the metrics of ServerCore.
+ * <p>
+ * Metrics are registered once, usually in a static field of the class they measure, and are named {@code subsystem.metric}.
+ * They can be read with {@code /servercore metrics}, and are logged periodically if enabled in the config.
+ *
+ * @since 0.1.0
+ */
+public final class Metrics {
+    private static final Map<String, Metric> REGISTRY = new ConcurrentSkipListMap<>();
+    private static long ticks;
+
+    private Metrics() {
+        throw new UnsupportedOperationException("Can't instantiate utility class");
+    }
+
+    /**
+     * Get or register a counter.
+     *
+     * @param name the name of the counter.
+     * @return the counter.
+     * @throws IllegalArgumentException if a metric of another type is registered with the name.
+     * @since 0.1.0
+     */
+    public static Counter counter(String name) {
+        return register(name, Counter.class, Counter::new);
+    }
+
+    /**
+     * Get or register a histogram.
+     *
+     * @param name the name of the histogram.
+     * @return the histogram.
+     * @throws IllegalArgumentException if a metric of another type is registered with the name.
+     * @since 0.1.0
+     */
+    public static Histogram histogram(String name) {
+        return register(name, Histogram.class, Histogram::new);
+    }
+
+    /**
+     * Get or register a timer.
+     *
+     * @param name the name of the timer.
+     * @return the timer.
+     * @throws IllegalArgumentException if a metric of another type is registered with the name.
+     * @since 0.1.0
+     */
+    public static Timer timer(String name) {
+        return register(name, Timer.class, Timer::new);
+    }
+
+    /**
+     * Register a gauge, replacing an earlier gauge with the same name.
+     *
+     * @param name  the name of the gauge.
+     * @param value the supplier of the value.
+     * @return the gauge.
+     * @throws IllegalArgumentException if a metric of another type is registered with the name.
+     * @since 0.1.0
+     */
+    public static Gauge gauge(String name, LongSupplier value) {
+        Gauge gauge = new Gauge(name, value);
+        Metric previous = REGISTRY.put(name, gauge);
+        if (previous != null && !(previous instanceof Gauge)) {
+            REGISTRY.put(name, previous);
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + previous.getClass().getSimpleName());
+        }
+        return gauge;
+    }
+
+    /**
+     * Get all registered metrics, sorted by name.
+     *
+     * @return the metrics.
+     * @since 0.1.0
+     */
+    public static Collection<Metric> all() {
+        return REGISTRY.values();
+    }
+
+    /**
+     * Describe all registered metrics, one line per metric.
+     *
+     * @return the lines.
+     * @since 0.1.0
+     */
+    public static List<String> dump() {
+        List<String> lines = new ArrayList<>(REGISTRY.size());
+        for (Metric metric : REGISTRY.values()) {
+            lines.add(metric.name() + ": " + metric.describe());
+        }
+        return lines;
+    }
+
+    /**
+     * Log the metrics when the log interval in the config has passed.
+     *
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public static void tick() {
+        int interval = Config.getMetricsLogInterval();
+        if (interval <= 0 || ++ticks % (interval * 20L) != 0) return;
+
+        ServerCore.LOGGER.info("ServerCore metrics:\n  " + String.join("\n  ", dump()));
+    }
+
+    private static <T extends Metric> T register(String name, Class<T> type, Function<String, T> factory) {
+        Metric metric = REGISTRY.computeIfAbsent(name, factory);
+        if (metric.getClass() != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ultreon.mods.servercore.server.metrics;
+
+import java.util.Locale;
+
+/**
+ * Timer metric, a histogram of durations in nanoseconds.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * long start = TIMER.start();
+ * try {
+ *     ...
+ * } finally {
+ *     TIMER.stop(start);
+ * }
+ * }</pre>
+ *
+ * @since 0.1.0
+ */
+public final class Timer extends Histogram {
+    Timer(String name) {
+        super(name);
+    }
+
+    /**
+     * Start timing.
+     *
+     * @return the start time, to pass to {@link #stop(long)}.
+     * @since 0.1.0
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Stop timing, and record the duration.
+     *
+     * @param start the start time from {@link #start()}.
+     * @since 0.1.0
+     */
+    public void stop(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    @Override
+    String format(long nanos) {
+        if (nanos < 1_000) return nanos + "ns";
+        if (nanos < 1_000_000) return String.format(Locale.ROOT, "%.1f\u00b5s", nanos / 1_000.0);
+        if (nanos < 1_000_000_000) return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1_000_000_000.0);
+    }
+}
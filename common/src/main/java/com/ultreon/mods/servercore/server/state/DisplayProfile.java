@@ -0,0 +1,31 @@
+package com.ultreon.mods.servercore.server.state;
+
+import com.ultreon.mods.servercore.server.Rank;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * How a player is displayed in chat: the highest rank.
+ * Cached per player, and replaced when the player's ranks change, or the name or priority of a rank changes.
+ * The rank prefix is rendered by {@link Rank#getPrefixComponent()} when it's used.
+ *
+ * @since 0.1.0
+ */
+public final class DisplayProfile {
+    private final Rank rank;
+    final long epoch;
+
+    DisplayProfile(@Nullable Rank rank, long epoch) {
+        this.rank = rank;
+        this.epoch = epoch;
+    }
+
+    /**
+     * Get the highest rank of the player.
+     *
+     * @return the highest rank.
+     * @since 0.1.0
+     */
+    public Rank rank() {
+        return rank;
+    }
+}
@@ -2,10 +2,15 @@ package com.ultreon.mods.servercore.server.state;
 
 import com.ultreon.mods.servercore.ServerCore;
 import com.ultreon.mods.servercore.network.Network;
+import com.ultreon.mods.servercore.network.PermissionDelta;
 import com.ultreon.mods.servercore.network.StateSync;
 import com.ultreon.mods.servercore.server.DefaultRank;
 import com.ultreon.mods.servercore.server.Permission;
+import com.ultreon.mods.servercore.server.PermissionIndex;
 import com.ultreon.mods.servercore.server.Rank;
+import com.ultreon.mods.servercore.server.metrics.Counter;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
+import com.ultreon.mods.servercore.server.metrics.Timer;
 import net.minecraft.nbt.*;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
@@ -16,9 +21,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static com.ultreon.mods.servercore.network.StateSync.INIT_PERMISSIONS;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Server player state.
@@ -26,13 +29,23 @@ import static com.ultreon.mods.servercore.network.StateSync.INIT_PERMISSIONS;
  * @since 0.1.0
  */
 public class ServerPlayerState extends ServerState {
+    private static final Timer SAVE_TIME = Metrics.timer("state.save");
+    private static final Counter PERMISSION_CHECKS = Metrics.counter("permissions.checks");
+    private static final Counter PERMISSION_DENIALS = Metrics.counter("permissions.denied");
     private final UUID uuid;
     private final ServerStateManager main;
     private final File baseDir;
     private final File genericDataFile;
-    private final Map<String, Rank> ranks = new HashMap<>();
-    private final Set<Permission> permissions = new HashSet<>();
-    private ServerPlayer player;
+    private final Map<String, Rank> ranks = new ConcurrentHashMap<>();
+    private final Set<Permission> permissions = ConcurrentHashMap.newKeySet();
+    private final PermissionIndex permissionIndex = new PermissionIndex();
+    private volatile ServerPlayer player;
+    private int modCount;
+    private int savedModCount;
+    private volatile long lastAccess;
+    private volatile long permissionEpoch;
+    private volatile DisplayProfile displayProfile;
+    private final PermissionDelta.Encoder permissionEncoder = new PermissionDelta.Encoder();
 
     /**
      * Create an instance of the player state class.
@@ -59,6 +72,28 @@ public class ServerPlayerState extends ServerState {
         load();
 
         this.ranks.put(main.getDefaultRank().getId(), main.getDefaultRank());
+
+        rebuildPermissionIndex();
+    }
+
+    private synchronized void rebuildPermissionIndex() {
+        // Read the epoch first, a rank change during the rebuild makes it stale again.
+        long epoch = main.permissionEpoch();
+
+        // Compile the permission index from the ranks and direct grants, and publish it at once.
+        PermissionIndex index = new PermissionIndex();
+        this.ranks.values().forEach(rank -> index.addAll(rank.getPermissions()));
+        index.addAll(this.permissions);
+        this.permissionIndex.set(index);
+        this.permissionEpoch = epoch;
+    }
+
+    private PermissionIndex permissionIndex() {
+        // Rank changes are only pushed to online players, offline ones rebuild when a rank changed meanwhile.
+        if (player == null && permissionEpoch != main.permissionEpoch()) {
+            rebuildPermissionIndex();
+        }
+        return permissionIndex;
     }
 
     /**
@@ -68,15 +103,15 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     @ApiStatus.Internal
-    public void onJoin(ServerPlayer player) {
+    public synchronized void onJoin(ServerPlayer player) {
+        // Catch up on rank changes while offline, from here on changes are pushed.
+        permissionIndex();
         this.player = player;
+        main.onStateJoined(this);
 
-        CompoundTag data = new CompoundTag();
-        ListTag permissions = new ListTag();
-        this.ranks.values().forEach(rank -> rank.getPermissions().forEach(perm -> permissions.add(StringTag.valueOf(perm.id()))));
-        this.permissions.forEach(perm -> permissions.add(StringTag.valueOf(perm.id())));
-        data.put("Permissions", permissions);
-        Network.sendStateSync(player, INIT_PERMISSIONS, data);
+        // The first delta resets the client, and sends everything.
+        permissionEncoder.reset();
+        markPermissionSync();
     }
 
     /**
@@ -85,13 +120,19 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     @ApiStatus.Internal
-    public void onQuit() {
+    public synchronized void onQuit() {
+        if (player == null) return;
+        main.onStateQuit(this);
+        main.cancelPermissionSync(this);
+        this.permissionEpoch = main.permissionEpoch();
         this.player = null;
     }
 
     private void load() throws IOException {
         try {
-            CompoundTag genericData = NbtIo.readCompressed(genericDataFile);
+            // A snapshot that's still being written is newer than the file.
+            CompoundTag genericData = main.persistence().pending(genericDataFile);
+            if (genericData == null) genericData = NbtIo.readCompressed(genericDataFile);
             ranks.clear();
             ListTag ranks = genericData.getList("Ranks", Tag.TAG_STRING);
             for (Tag tag : ranks) {
@@ -107,7 +148,7 @@ public class ServerPlayerState extends ServerState {
             for (Tag tag : permissions) {
                 if (tag instanceof StringTag s) {
                     String id = s.getAsString();
-                    this.permissions.add(new Permission(id));
+                    this.permissions.add(Permission.of(id));
                 }
             }
         } catch (FileNotFoundException e) {
@@ -117,37 +158,67 @@ public class ServerPlayerState extends ServerState {
 
     /**
      * Save the player state to NBT.
+     * The data is snapshot on the calling thread, and written in the background.
      *
      * @since 0.1.0
      */
-    public void save() {
-        try {
-            // Create base directory if non-existent.
-            if (!baseDir.exists() && !baseDir.mkdirs())
-                throw new IOException("Failed to create directories: " + baseDir.getPath());
-
-            // Create NBT tag.
-            CompoundTag tag = new CompoundTag();
+    public synchronized void save() {
+        if (modCount == savedModCount) {
+            main.onSkippedWrite();
+            return;
+        }
+        savedModCount = modCount;
+        long start = SAVE_TIME.start();
 
-            // Ranks
-            ListTag ranks = new ListTag();
-            for (Rank rank : this.ranks.values()) {
-                ranks.add(StringTag.valueOf(rank.getId()));
-            }
-            tag.put("Ranks", ranks);
+        // Create NBT tag.
+        CompoundTag tag = new CompoundTag();
 
-            // Permissions
-            ListTag permissions = new ListTag();
-            for (Permission permission : this.permissions) {
-                permissions.add(StringTag.valueOf(permission.id()));
-            }
-            tag.put("Permissions", permissions);
+        // Ranks
+        ListTag ranks = new ListTag();
+        for (Rank rank : this.ranks.values()) {
+            ranks.add(StringTag.valueOf(rank.getId()));
+        }
+        tag.put("Ranks", ranks);
 
-            // Write data.
-            NbtIo.writeCompressed(tag, genericDataFile);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        // Permissions
+        ListTag permissions = new ListTag();
+        for (Permission permission : this.permissions) {
+            permissions.add(StringTag.valueOf(permission.id()));
         }
+        tag.put("Permissions", permissions);
+
+        // Write data.
+        main.persistence().write(genericDataFile, tag);
+        SAVE_TIME.stop(start);
+    }
+
+    /**
+     * Get the modification counter of the state.
+     * Increases every time the ranks or permissions of the player are changed.
+     *
+     * @return the modification count.
+     * @since 0.1.0
+     */
+    public int version() {
+        return modCount;
+    }
+
+    /**
+     * Check if the state has changed since it was last saved.
+     *
+     * @return whether the state has unsaved changes.
+     * @since 0.1.0
+     */
+    public boolean isDirty() {
+        return modCount != savedModCount;
+    }
+
+    void touch(long tick) {
+        this.lastAccess = tick;
+    }
+
+    long lastAccess() {
+        return lastAccess;
     }
 
     /**
@@ -197,7 +268,7 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     public void addPermission(String permission) {
-        this.addPermission(new Permission(permission));
+        this.addPermission(Permission.of(permission));
     }
 
     /**
@@ -206,12 +277,11 @@ public class ServerPlayerState extends ServerState {
      * @param permission the permission to add.
      * @since 0.1.0
      */
-    public void addPermission(Permission permission) {
-        boolean hadBefore = hasPermission(permission);
-        permissions.add(permission);
-
-        if (!hadBefore) {
-            sendAddPermission(permission);
+    public synchronized void addPermission(Permission permission) {
+        if (permissions.add(permission)) {
+            permissionIndex.add(permission);
+            modCount++;
+            markPermissionSync();
         }
     }
 
@@ -222,7 +292,7 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     public void removePermission(String permission) {
-        this.removePermission(new Permission(permission));
+        this.removePermission(Permission.lookup(permission));
     }
 
     /**
@@ -231,12 +301,11 @@ public class ServerPlayerState extends ServerState {
      * @param permission the permission to remove.
      * @since 0.1.0
      */
-    public void removePermission(Permission permission) {
-        boolean hadBefore = hasPermission(permission);
-        permissions.remove(permission);
-
-        if (!hasPermission(permission) && hadBefore) {
-            sendRemovePermission(permission);
+    public synchronized void removePermission(Permission permission) {
+        if (permissions.remove(permission)) {
+            permissionIndex.remove(permission);
+            modCount++;
+            markPermissionSync();
         }
     }
 
@@ -248,7 +317,7 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     public boolean hasPermission(String permission) {
-        return hasPermission(new Permission(permission));
+        return hasPermission(Permission.lookup(permission));
     }
 
     /**
@@ -259,8 +328,10 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     public boolean hasPermission(Permission permission) {
-        return ranks.values().stream().anyMatch(rank -> rank.hasPermission(permission))
-                || permissions.stream().anyMatch(perm -> perm.isChild(permission) || perm.equals(permission));
+        boolean granted = permissionIndex().contains(permission);
+        PERMISSION_CHECKS.increment();
+        if (!granted) PERMISSION_DENIALS.increment();
+        return granted;
     }
 
     /**
@@ -300,12 +371,7 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     public void addRank(Rank rank) {
-        Rank official = main.getRank(rank.getId());
-        if (official == null) throw new IllegalArgumentException("Rank doesn't exist: " + rank.getId());
-        if (official instanceof DefaultRank) throw new IllegalArgumentException("Can't add an default Rank.");
-        if (ranks.containsKey(rank.getId())) return;
-        this.sendBulkAddPermission(official.getPermissions());
-        this.ranks.put(official.getId(), official);
+        addRank(rank.getId());
     }
 
     /**
@@ -314,13 +380,17 @@ public class ServerPlayerState extends ServerState {
      * @param id the ID.
      * @since 0.1.0
      */
-    public void addRank(String id) {
+    public synchronized void addRank(String id) {
         Rank official = main.getRank(id);
         if (official == null) throw new IllegalArgumentException("Rank doesn't exist: " + id);
         if (official instanceof DefaultRank) throw new IllegalArgumentException("Can't add an default Rank.");
         if (ranks.containsKey(id)) return;
-        this.sendBulkAddPermission(official.getPermissions());
         this.ranks.put(id, official);
+        this.permissionIndex.addAll(official.getPermissions());
+        this.modCount++;
+        this.displayProfile = null;
+        if (player != null) main.onStateRankAdded(this, id);
+        markPermissionSync();
     }
 
     /**
@@ -330,11 +400,7 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     public void removeRank(Rank rank) {
-        Rank official = ranks.get(rank.getId());
-        if (official instanceof DefaultRank) return;
-        if (!ranks.containsKey(rank.getId())) return;
-        this.sendBulkRemovePermission(official.getPermissions().stream().filter(permission -> !hasPermission(permission)).collect(Collectors.toSet()));
-        this.ranks.remove(rank.getId());
+        removeRank(rank.getId());
     }
 
     /**
@@ -343,12 +409,26 @@ public class ServerPlayerState extends ServerState {
      * @param id the ID.
      * @since 0.1.0
      */
-    public void removeRank(String id) {
-        Rank official = main.getRank(id);
-        if (official instanceof DefaultRank) return;
-        if (!ranks.containsKey(id)) return;
-        this.sendBulkRemovePermission(official.getPermissions().stream().filter(permission -> !hasPermission(permission)).collect(Collectors.toSet()));
+    public synchronized void removeRank(String id) {
+        // Use our own reference, the rank could already be deleted from the manager.
+        Rank official = ranks.get(id);
+        if (official == null || official instanceof DefaultRank) return;
         this.ranks.remove(id);
+        this.permissionIndex.removeAll(official.getPermissions());
+        this.modCount++;
+        this.displayProfile = null;
+        if (player != null) main.onStateRankRemoved(this, id);
+        markPermissionSync();
+    }
+
+    /**
+     * Get all the ranks the player has.
+     *
+     * @return all the ranks.
+     * @since 0.1.0
+     */
+    public Collection<Rank> getRanks() {
+        return Collections.unmodifiableCollection(ranks.values());
     }
 
     /**
@@ -374,50 +454,49 @@ public class ServerPlayerState extends ServerState {
     }
 
     /**
-     * Send permission adding to client.
+     * Handle a permission being added to one of the player's ranks.
      *
-     * @param permission permission to send the adding for.
+     * @param permission the permission that was added.
      * @since 0.1.0
      */
     @ApiStatus.Internal
-    public void sendAddPermission(Permission permission) {
-        ServerPlayer player = this.player;
-        if (player != null) {
-            CompoundTag data = StateSync.setPermission(permission, true);
-            Network.sendStateSync(player, StateSync.SET_PERMISSION, data);
-        }
+    public synchronized void onRankPermissionAdded(Permission permission) {
+        permissionIndex.add(permission);
+        markPermissionSync();
     }
 
     /**
-     * Send permission removing to client.
+     * Handle a permission being removed from one of the player's ranks.
      *
-     * @param permission permission to send the removal for.
+     * @param permission the permission that was removed.
      * @since 0.1.0
      */
     @ApiStatus.Internal
-    public void sendRemovePermission(Permission permission) {
-        ServerPlayer player = this.player;
-        if (player != null) {
-            CompoundTag data = StateSync.setPermission(permission, false);
-            Network.sendStateSync(player, StateSync.SET_PERMISSION, data);
-        }
+    public synchronized void onRankPermissionRemoved(Permission permission) {
+        permissionIndex.remove(permission);
+        markPermissionSync();
     }
 
-    @ApiStatus.Internal
-    private void sendBulkAddPermission(Set<Permission> permissions) {
-        ServerPlayer player = this.player;
-        if (player != null) {
-            CompoundTag data = StateSync.setMultiPermission(permissions, true);
-            Network.sendStateSync(player, StateSync.SET_MULTI_PERMISSIONS, data);
-        }
+    private void markPermissionSync() {
+        if (player != null) main.queuePermissionSync(this);
     }
 
+    /**
+     * Send the permission changes since the last sync to the client.
+     * All changes made within a tick are coalesced in one state sync message.
+     *
+     * @since 0.1.0
+     */
     @ApiStatus.Internal
-    private void sendBulkRemovePermission(Set<Permission> permissions) {
+    public synchronized void flushPermissionSync() {
         ServerPlayer player = this.player;
-        if (player != null) {
-            CompoundTag data = StateSync.setMultiPermission(permissions, false);
-            Network.sendStateSync(player, StateSync.SET_MULTI_PERMISSIONS, data);
+        if (player == null) return;
+
+        Set<Permission> granted = new HashSet<>(permissions);
+        ranks.values().forEach(rank -> granted.addAll(rank.getPermissions()));
+        CompoundTag data = permissionEncoder.encode(granted);
+        if (data != null) {
+            Network.sendStateSync(player, StateSync.PERMISSION_DELTA, data);
         }
     }
 
@@ -428,6 +507,27 @@ public class ServerPlayerState extends ServerState {
      * @since 0.1.0
      */
     public Rank getHighestRank() {
+        return getDisplayProfile().rank();
+    }
+
+    /**
+     * Get how the player is displayed in chat.
+     * Cached until the player's ranks change, or the name or priority of a rank changes.
+     *
+     * @return the display profile.
+     * @since 0.1.0
+     */
+    public DisplayProfile getDisplayProfile() {
+        DisplayProfile profile = this.displayProfile;
+        long epoch = main.rankDisplayEpoch();
+        if (profile == null || profile.epoch != epoch) {
+            profile = new DisplayProfile(computeHighestRank(), epoch);
+            this.displayProfile = profile;
+        }
+        return profile;
+    }
+
+    private Rank computeHighestRank() {
         int cur = Integer.MIN_VALUE;
         Rank curRank = null;
         for (Rank rank : ranks.values()) {
@@ -9,6 +9,9 @@ import com.ultreon.mods.servercore.ServerCore;
 import com.ultreon.mods.servercore.server.DefaultRank;
 import com.ultreon.mods.servercore.server.Permission;
 import com.ultreon.mods.servercore.server.Rank;
+import com.ultreon.mods.servercore.server.chat.MentionResolver;
+import com.ultreon.mods.servercore.server.config.Config;
+import com.ultreon.mods.servercore.server.metrics.Metrics;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
@@ -27,28 +30,94 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
 
 /**
  * Server state manager.
+ * <p>
+ * Threading model: changes to ranks and player states (adding or removing ranks and permissions, joining, quitting
+ * and saving) are done on the server thread. Reading is safe from any thread, this includes permission checks,
+ * rank lookups and player state lookups. In detail:
+ * <ul>
+ *     <li>The rank map is copy-on-write, lookups read an immutable snapshot.</li>
+ *     <li>Player states are kept in a concurrent map, and use concurrent collections for their ranks and permissions.</li>
+ *     <li>Changes to a player state are serialized on the state itself, so the lock is striped per player.</li>
+ *     <li>Permission checks read a persistent trie that's published through a volatile field, they never lock.</li>
+ * </ul>
  *
  * @since 0.1.0
  */
 public class ServerStateManager {
     private static final LevelResource LEVEL_RESOURCE = new LevelResource("data/servercore");
-    private static ServerStateManager instance;
+    private static final int SWEEP_INTERVAL = 20 * 60; // 1 minute.
+    private static volatile ServerStateManager instance;
     private final MinecraftServer server;
-    private final Map<UUID, ServerPlayerState> playerStates = new HashMap<>();
+    private final Map<UUID, ServerPlayerState> playerStates = new ConcurrentHashMap<>();
+    // Offline states in order of access, eldest first. Online states are pinned, so they aren't tracked.
+    private final LinkedHashMap<UUID, ServerPlayerState> offlineStates = new LinkedHashMap<>(16, 0.75f, true);
     private final File baseDir;
-    private final Map<String, Rank> ranks = new HashMap<>();
+    private final Object rankLock = new Object();
+    private volatile Map<String, Rank> ranks = Map.of();
     private final File globalDataFile;
     private final Set<Permission> globalPermissions = new HashSet<>();
     private final Rank defaultRank;
+    private final StatePersistence persistence = new StatePersistence();
+    private final LongAdder skippedWrites = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheEvictions = new LongAdder();
+    private int ranksModCount;
+    private int savedRanksModCount;
+    private long ticks;
+    private final Map<String, Set<ServerPlayerState>> onlineByRank = new ConcurrentHashMap<>();
+    private final AtomicLong permissionEpoch = new AtomicLong();
+    private final AtomicLong rankDisplayEpoch = new AtomicLong();
+    private final Set<ServerPlayerState> pendingPermissionSync = ConcurrentHashMap.newKeySet();
+    private final MentionResolver mentions = new MentionResolver();
+
+    static {
+        Metrics.gauge("state.cache.hits", () -> stat(ServerStateManager::getCacheHits));
+        Metrics.gauge("state.cache.misses", () -> stat(ServerStateManager::getCacheMisses));
+        Metrics.gauge("state.cache.evictions", () -> stat(ServerStateManager::getCacheEvictions));
+        Metrics.gauge("state.skipped_writes", () -> stat(ServerStateManager::getSkippedWrites));
+    }
 
     private ServerStateManager(MinecraftServer server) {
+        this(server, server.getWorldPath(LEVEL_RESOURCE).toFile(), readGlobalPermissions(server));
+    }
+
+    /**
+     * Create a state manager that isn't bound to a running server, used by the benchmarks.
+     *
+     * @param server            the server, or null if headless.
+     * @param baseDir           the directory where the data is stored.
+     * @param globalPermissions the globally enabled permissions.
+     */
+    @ApiStatus.Internal
+    ServerStateManager(@Nullable MinecraftServer server, File baseDir, Set<Permission> globalPermissions) {
         this.server = server;
-        this.baseDir = server.getWorldPath(LEVEL_RESOURCE).toFile();
+        this.baseDir = baseDir;
         this.globalDataFile = new File(this.baseDir, "global.dat");
+        this.globalPermissions.addAll(globalPermissions);
+
+        try {
+            loadLocal();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        Rank loadedDefRank = getRank("default");
+        this.defaultRank = loadedDefRank != null
+                ? new DefaultRank(loadedDefRank)
+                : new DefaultRank("Default", "&8[&7Default&8] ", this.globalPermissions);
+        putRank(this.defaultRank);
+    }
 
+    private static Set<Permission> readGlobalPermissions(MinecraftServer server) {
+        Set<Permission> globalPermissions = new HashSet<>();
         List<Resource> resourceStack = server.getResourceManager().getResourceStack(ServerCore.res("sc/permissions.json"));
         Gson gson = new Gson();
         resourceStack.forEach(resource -> {
@@ -59,7 +128,7 @@ public class ServerStateManager {
                     String permissionId = entry.getKey();
                     if (entry.getValue() instanceof JsonPrimitive primitive) {
                         if (primitive.isBoolean() && primitive.getAsBoolean()) {
-                            this.globalPermissions.add(new Permission(permissionId));
+                            globalPermissions.add(Permission.of(permissionId));
                         }
                     }
                 }
@@ -67,18 +136,7 @@ public class ServerStateManager {
                 e.printStackTrace();
             }
         });
-
-        try {
-            loadLocal();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        Rank loadedDefRank = getRank("default");
-        this.defaultRank = loadedDefRank != null
-                ? new DefaultRank(loadedDefRank)
-                : new DefaultRank("Default", "&8[&7Default&8] ", this.globalPermissions);
-        ranks.put(this.defaultRank.getId(), this.defaultRank);
+        return globalPermissions;
     }
 
     /**
@@ -90,14 +148,17 @@ public class ServerStateManager {
     public void loadLocal() throws IOException {
         try {
             CompoundTag genericData = NbtIo.readCompressed(globalDataFile);
-            ranks.clear();
+            Map<String, Rank> loaded = new HashMap<>();
             ListTag ranks = genericData.getList("Ranks", Tag.TAG_COMPOUND);
             for (Tag tag : ranks) {
                 if (tag instanceof CompoundTag compoundTag) {
                     Rank rank = new Rank(compoundTag);
-                    this.ranks.put(rank.getId(), rank);
+                    loaded.put(rank.getId(), rank);
                 }
             }
+            synchronized (rankLock) {
+                this.ranks = Collections.unmodifiableMap(loaded);
+            }
         } catch (FileNotFoundException ignored) {
             // Ignore
         }
@@ -114,30 +175,54 @@ public class ServerStateManager {
 
     /**
      * Load local data from NBT.
+     * The data is snapshot on the calling thread, and written in the background.
      *
      * @since 0.1.0
      */
     public void saveLocal() {
-        try {
-            // Create base directory if non-existent.
-            if (!baseDir.exists() && !baseDir.mkdirs())
-                throw new IOException("Failed to create directories: " + baseDir.getPath());
-
-            // Create NBT tag.
-            CompoundTag tag = new CompoundTag();
+        if (ranksModCount == savedRanksModCount && ranks.values().stream().noneMatch(Rank::isDirty)) {
+            skippedWrites.increment();
+            return;
+        }
+        savedRanksModCount = ranksModCount;
 
-            // Ranks
-            ListTag ranks = new ListTag();
-            for (Rank rank : this.ranks.values()) {
-                ranks.add(rank.save());
-            }
-            tag.put("Ranks", ranks);
+        // Create NBT tag.
+        CompoundTag tag = new CompoundTag();
 
-            // Write data.
-            NbtIo.writeCompressed(tag, globalDataFile);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        // Ranks
+        ListTag ranks = new ListTag();
+        for (Rank rank : this.ranks.values()) {
+            ranks.add(rank.save());
         }
+        tag.put("Ranks", ranks);
+
+        // Write data.
+        persistence.write(globalDataFile, tag);
+    }
+
+    /**
+     * Get the amount of saves that were skipped because nothing changed.
+     *
+     * @return the amount of skipped writes.
+     * @since 0.1.0
+     */
+    public long getSkippedWrites() {
+        return skippedWrites.sum();
+    }
+
+    void onSkippedWrite() {
+        skippedWrites.increment();
+    }
+
+    /**
+     * Get the background persistence of the state data.
+     *
+     * @return the persistence.
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public StatePersistence persistence() {
+        return persistence;
     }
 
     /**
@@ -151,6 +236,11 @@ public class ServerStateManager {
         return instance;
     }
 
+    private static long stat(ToLongFunction<ServerStateManager> stat) {
+        ServerStateManager manager = instance;
+        return manager == null ? 0 : stat.applyAsLong(manager);
+    }
+
     /**
      * Get the server where the manager is bound to.
      *
@@ -181,7 +271,14 @@ public class ServerStateManager {
     @ApiStatus.Internal
     public static void stop() {
         ServerCore.LOGGER.info("Stopping the server-side state manager.");
+        ServerStateManager manager = instance;
         instance = null;
+        if (manager != null) {
+            // Flush barrier: everything is written before the server is allowed to finish stopping.
+            manager.playerStates.values().forEach(ServerPlayerState::save);
+            manager.saveLocal();
+            manager.persistence.close();
+        }
     }
 
     /**
@@ -219,7 +316,108 @@ public class ServerStateManager {
      * @since 0.1.0
      */
     public ServerPlayerState player(UUID uuid) {
-        return playerStates.computeIfAbsent(uuid, this::loadPlayer);
+        ServerPlayerState state = playerStates.get(uuid);
+        boolean loaded = state == null;
+        if (loaded) {
+            cacheMisses.increment();
+            state = playerStates.computeIfAbsent(uuid, this::loadPlayer);
+        } else {
+            cacheHits.increment();
+        }
+        state.touch(ticks);
+        if (state.isOffline()) touchOffline(state);
+        if (loaded && playerStates.size() > Config.getMaxCachedPlayers()) {
+            evictLeastRecentlyUsed(state);
+        }
+        return state;
+    }
+
+    /**
+     * Tick the state manager, evicts offline player states that are idle for too long.
+     *
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public void tick() {
+        flushPermissionSync();
+
+        if (++ticks % SWEEP_INTERVAL != 0) return;
+
+        long idleSince = ticks - Config.getMaxPlayerIdleTime();
+        List<ServerPlayerState> idle = new ArrayList<>();
+        synchronized (offlineStates) {
+            for (Iterator<ServerPlayerState> iterator = offlineStates.values().iterator(); iterator.hasNext(); ) {
+                ServerPlayerState state = iterator.next();
+                // Eldest first, so the rest was used more recently.
+                if (state.lastAccess() >= idleSince) break;
+                if (state.isOnline()) continue;
+                iterator.remove();
+                idle.add(state);
+            }
+        }
+        idle.forEach(this::evict);
+    }
+
+    private void evictLeastRecentlyUsed(ServerPlayerState loaded) {
+        // Evict a batch at once, so not every next miss has to evict again.
+        // The state that was just loaded is returned to the caller, so it's never evicted.
+        int excess = playerStates.size() - Config.getMaxCachedPlayers() * 9 / 10;
+        List<ServerPlayerState> evicted = new ArrayList<>();
+        synchronized (offlineStates) {
+            for (Iterator<ServerPlayerState> iterator = offlineStates.values().iterator(); iterator.hasNext() && evicted.size() < excess; ) {
+                ServerPlayerState state = iterator.next();
+                if (state == loaded || state.isOnline()) continue;
+                iterator.remove();
+                evicted.add(state);
+            }
+        }
+        evicted.forEach(this::evict);
+    }
+
+    private void touchOffline(ServerPlayerState state) {
+        synchronized (offlineStates) {
+            offlineStates.put(state.getUuid(), state);
+        }
+    }
+
+    private void evict(ServerPlayerState state) {
+        // Online players are pinned.
+        if (state.isOnline()) return;
+
+        state.save();
+        if (playerStates.remove(state.getUuid(), state)) {
+            cacheEvictions.increment();
+        }
+    }
+
+    /**
+     * Get the amount of player state lookups that were already loaded.
+     *
+     * @return the amount of cache hits.
+     * @since 0.1.0
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Get the amount of player state lookups that had to be loaded.
+     *
+     * @return the amount of cache misses.
+     * @since 0.1.0
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Get the amount of offline player states that were unloaded.
+     *
+     * @return the amount of cache evictions.
+     * @since 0.1.0
+     */
+    public long getCacheEvictions() {
+        return cacheEvictions.sum();
     }
 
     private ServerPlayerState loadPlayer(UUID uuid) {
@@ -274,10 +472,21 @@ public class ServerStateManager {
      * @since 0.1.0
      */
     public void addRank(Rank rank) {
-        Rank original = ranks.get(rank.getId());
-        if (rank instanceof DefaultRank) throw new IllegalArgumentException("Default Rank is for internal usage.");
-        if (original != null) throw new IllegalArgumentException("Can't overwrite original rank.");
-        this.ranks.put(rank.getId(), rank);
+        synchronized (rankLock) {
+            Rank original = ranks.get(rank.getId());
+            if (rank instanceof DefaultRank) throw new IllegalArgumentException("Default Rank is for internal usage.");
+            if (original != null) throw new IllegalArgumentException("Can't overwrite original rank.");
+            putRank(rank);
+            this.ranksModCount++;
+        }
+    }
+
+    private void putRank(Rank rank) {
+        synchronized (rankLock) {
+            Map<String, Rank> copy = new HashMap<>(ranks);
+            copy.put(rank.getId(), rank);
+            ranks = Collections.unmodifiableMap(copy);
+        }
     }
 
     /**
@@ -287,11 +496,18 @@ public class ServerStateManager {
      * @since 0.1.0
      */
     public void removeRank(String id) {
-        if (ranks.get(id) instanceof DefaultRank) throw new IllegalArgumentException("Can't remove default Rank.");
-        ranks.remove(id);
+        synchronized (rankLock) {
+            if (ranks.get(id) instanceof DefaultRank) throw new IllegalArgumentException("Can't remove default Rank.");
+            if (!ranks.containsKey(id)) return;
+            Map<String, Rank> copy = new HashMap<>(ranks);
+            copy.remove(id);
+            ranks = Collections.unmodifiableMap(copy);
+            ranksModCount++;
+        }
         for (ServerPlayerState state : playerStates.values()) {
             state.removeRank(id);
         }
+        onlineByRank.remove(id);
     }
 
     /**
@@ -332,7 +548,7 @@ public class ServerStateManager {
      * @return whether it has permission.
      */
     public boolean hasPermission(CommandSourceStack commandSourceStack, String permission) {
-        return hasPermission(commandSourceStack, new Permission(permission));
+        return hasPermission(commandSourceStack, Permission.lookup(permission));
     }
 
     /**
@@ -368,16 +584,131 @@ public class ServerStateManager {
      * @since 0.1.0
      */
     public List<Player> getOnlinePlayersWith(Rank rank) {
-        if (getRank(rank.getId()) == null) return new ArrayList<>();
+        Set<ServerPlayerState> states = onlineByRank.get(rank.getId());
+        if (states == null) return new ArrayList<>();
 
-        List<Player> players = new ArrayList<>();
-        for (ServerPlayerState state : playerStates.values()) {
-            if (state.isOffline()) continue;
-            if (state.hasRank(rank)) {
-                players.add(state.player());
-            }
+        List<Player> players = new ArrayList<>(states.size());
+        for (ServerPlayerState state : states) {
+            Player player = state.player();
+            if (player != null) players.add(player);
         }
 
         return players;
     }
+
+    void onStateJoined(ServerPlayerState state) {
+        synchronized (offlineStates) {
+            offlineStates.remove(state.getUuid());
+        }
+        for (Rank rank : state.getRanks()) {
+            onStateRankAdded(state, rank.getId());
+        }
+        mentions.onJoin(state.player());
+    }
+
+    void onStateQuit(ServerPlayerState state) {
+        touchOffline(state);
+        for (Rank rank : state.getRanks()) {
+            onStateRankRemoved(state, rank.getId());
+        }
+        mentions.onQuit(state.player());
+    }
+
+    void onStateRankAdded(ServerPlayerState state, String id) {
+        onlineByRank.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(state);
+        mentions.invalidate(state.getUuid());
+    }
+
+    void onStateRankRemoved(ServerPlayerState state, String id) {
+        Set<ServerPlayerState> states = onlineByRank.get(id);
+        if (states != null) states.remove(state);
+        mentions.invalidate(state.getUuid());
+    }
+
+    /**
+     * Get the mention resolver, which indexes the online players by name.
+     *
+     * @return the mention resolver.
+     * @since 0.1.0
+     */
+    public MentionResolver mentions() {
+        return mentions;
+    }
+
+    /**
+     * Update the players with a rank after the rank's name or priority changed.
+     * Display profiles of all players are rebuilt when used next.
+     *
+     * @param rank the rank that changed.
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public void onRankDisplayChanged(Rank rank) {
+        rankDisplayEpoch.incrementAndGet();
+        Set<ServerPlayerState> states = onlineByRank.get(rank.getId());
+        if (states == null) return;
+        for (ServerPlayerState state : states) {
+            mentions.invalidate(state.getUuid());
+        }
+    }
+
+    void queuePermissionSync(ServerPlayerState state) {
+        pendingPermissionSync.add(state);
+    }
+
+    void cancelPermissionSync(ServerPlayerState state) {
+        pendingPermissionSync.remove(state);
+    }
+
+    private void flushPermissionSync() {
+        for (Iterator<ServerPlayerState> iterator = pendingPermissionSync.iterator(); iterator.hasNext(); ) {
+            ServerPlayerState state = iterator.next();
+            iterator.remove();
+            state.flushPermissionSync();
+        }
+    }
+
+    long permissionEpoch() {
+        return permissionEpoch.get();
+    }
+
+    long rankDisplayEpoch() {
+        return rankDisplayEpoch.get();
+    }
+
+    /**
+     * Propagate a permission added to a rank to the online players with that rank.
+     * Offline players rebuild their permissions when they're used next.
+     *
+     * @param rank       the rank that got the permission.
+     * @param permission the permission that was added.
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public void onRankPermissionAdded(Rank rank, Permission permission) {
+        permissionEpoch.incrementAndGet();
+        Set<ServerPlayerState> states = onlineByRank.get(rank.getId());
+        if (states == null) return;
+        for (ServerPlayerState state : states) {
+            state.onRankPermissionAdded(permission);
+        }
+    }
+
+    /**
+     * Propagate a permission removed from a rank to the online players with that rank.
+     * Offline players rebuild their permissions when they're used next.
+     *
+     * @param rank       the rank that lost the permission.
+     * @param permission the permission that was removed.
+     * @since 0.1.0
+     */
+    @ApiStatus.Internal
+    public void onRankPermissionRemoved(Rank rank, Permission permission) {
+        permissionEpoch.incrementAndGet();
+        Set<ServerPlayerState> states = onlineByRank.get(rank.getId());
+        if (states == null) return;
+        for (ServerPlayerState state : states) {
+            state.onRankPermissionRemoved(permission);
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package com.ultreon.mods.servercore.server.state;
+
+import com.ultreon.mods.servercore.ServerCore;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Write-behind persistence for state data.
+ * <p>
+ * Snapshots are handed over from the server thread, compression and writing is done on a dedicated I/O thread.
+ * Repeated writes to the same file are coalesced, only the latest snapshot is written.
+ * Files are written to a temporary file first, and then atomically moved in place.
+ *
+ * @since 0.1.0
+ */
+@ApiStatus.Internal
+public final class StatePersistence {
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final Map<File, CompoundTag> pending = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ServerCore-IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Queue a snapshot to be written.
+     * The snapshot should not be modified after this.
+     *
+     * @param file     the file to write to.
+     * @param snapshot the data to write.
+     * @since 0.1.0
+     */
+    public void write(File file, CompoundTag snapshot) {
+        // If there's already a write queued for the file, it will pick up the new snapshot.
+        if (pending.put(file, snapshot) == null) {
+            executor.execute(() -> flush(file));
+        }
+    }
+
+    /**
+     * Get the snapshot that is queued but not written yet.
+     *
+     * @param file the file to get the snapshot for.
+     * @return the pending snapshot, or null if there's none.
+     * @since 0.1.0
+     */
+    @Nullable
+    public CompoundTag pending(File file) {
+        return pending.get(file);
+    }
+
+    /**
+     * Wait for all queued writes to be done.
+     *
+     * @since 0.1.0
+     */
+    public void flush() {
+        try {
+            executor.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Write everything that's queued, and stop the I/O thread.
+     *
+     * @since 0.1.0
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                ServerCore.LOGGER.error("Timed out writing state data, " + pending.size() + " file(s) not saved.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(File file) {
+        CompoundTag snapshot;
+        while ((snapshot = pending.get(file)) != null) {
+            try {
+                writeAtomic(file, snapshot);
+            } catch (IOException e) {
+                ServerCore.LOGGER.error("Failed to write state data: " + file.getPath(), e);
+            }
+
+            // Keep the snapshot visible until it's written, retry when a newer one came in meanwhile.
+            if (pending.remove(file, snapshot)) return;
+        }
+    }
+
+    private static void writeAtomic(File file, CompoundTag snapshot) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs())
+            throw new IOException("Failed to create directories: " + dir.getPath());
+
+        File temp = new File(dir, file.getName() + ".tmp");
+        NbtIo.writeCompressed(snapshot, temp);
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.ultreon.mods.servercore.server.teleport;
 
+import com.ultreon.mods.servercore.server.ScheduledTask;
 import com.ultreon.mods.servercore.server.ServerHooks;
 import com.ultreon.mods.servercore.server.TaskManager;
 import com.ultreon.mods.servercore.server.config.Config;
@@ -17,6 +18,7 @@ public class Teleport<T> {
     private final List<Runnable> onFail = new ArrayList<>();
     private final List<Runnable> onSuccess = new ArrayList<>();
     private boolean cancelled = true;
+    private ScheduledTask task;
 
     public Teleport(UUID sender, TeleportDestination<T> destination) {
         this(sender, destination, Config.getTeleportDelay());
@@ -30,11 +32,13 @@ public class Teleport<T> {
     }
 
     public void prepare() {
-        TaskManager.INSTANCE.schedule(this::tick, 0);
+        // Ticks once for every tick of the countdown, and once more to teleport.
+        task = TaskManager.INSTANCE.scheduleRepeating(this::tick, 0, 1, Math.max(delay + 1, 1));
     }
 
     private void tick() {
         if (cancelled) {
+            TaskManager.INSTANCE.cancelTask(task.token());
             onFail.forEach(Runnable::run);
             return;
         }
@@ -46,8 +50,6 @@ public class Teleport<T> {
             else onSuccess.forEach(Runnable::run);
 
             countdown = 0;
-        } else {
-            TaskManager.INSTANCE.schedule(this::tick, 1);
         }
     }
 
@@ -1,35 +1,55 @@
 package com.ultreon.mods.servercore.server.teleport;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import com.mojang.authlib.GameProfile;
 import com.ultreon.mods.servercore.server.ServerHooks;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.entity.player.Player;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.security.SecureRandom;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-@SuppressWarnings("ClassCanBeRecord")
 public class TeleportManager {
     static final Map<UUID, TeleportRequest> ACTIVE_REQUESTS = new ConcurrentHashMap<>();
     private static TeleportManager instance;
     private final MinecraftServer server;
+    private final AtomicLong requestNumbers = new AtomicLong();
+    private final HashFunction requestIdHigh;
+    private final HashFunction requestIdLow;
 
     @ApiStatus.Internal
     public TeleportManager(MinecraftServer server) {
         this.server = server;
+
+        // The keys are drawn every server start, so the ids of other players' requests can't be derived from your own.
+        SecureRandom random = new SecureRandom();
+        this.requestIdHigh = Hashing.sipHash24(random.nextLong(), random.nextLong());
+        this.requestIdLow = Hashing.sipHash24(random.nextLong(), random.nextLong());
     }
 
     public static TeleportManager get() {
         return instance;
     }
 
+    /**
+     * Get an id for a new teleport request.
+     * Request ids are shown to players in click commands, so they're a keyed hash of a sequence number instead of the number itself.
+     *
+     * @return the request id.
+     */
     public static UUID nextReqId() {
+        TeleportManager manager = Objects.requireNonNull(instance, "Teleport manager isn't started.");
         UUID uuid;
 
         do {
-            uuid = UUID.randomUUID();
+            long number = manager.requestNumbers.incrementAndGet();
+            uuid = new UUID(manager.requestIdHigh.hashLong(number).asLong(), manager.requestIdLow.hashLong(number).asLong());
         } while (ACTIVE_REQUESTS.containsKey(uuid));
 
         return uuid;
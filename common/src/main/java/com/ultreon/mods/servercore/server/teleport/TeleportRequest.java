@@ -3,6 +3,7 @@ package com.ultreon.mods.servercore.server.teleport;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.ultreon.mods.servercore.server.ScheduledTask;
 import com.ultreon.mods.servercore.server.TaskManager;
+import com.ultreon.mods.servercore.server.TaskPriority;
 import com.ultreon.mods.servercore.server.chat.ChatContext;
 import com.ultreon.mods.servercore.server.config.Config;
 import org.jetbrains.annotations.ApiStatus;
@@ -37,7 +38,7 @@ public class TeleportRequest {
     private final List<Runnable> onDeny = new ArrayList<>();
     private final List<Runnable> onAccept = new ArrayList<>();
     private final List<Runnable> onFinalize = new ArrayList<>();
-    private UUID timeoutToken;
+    private long timeoutToken;
 
     /**
      * Create a teleport request.
@@ -241,7 +242,7 @@ public class TeleportRequest {
     }
 
     public void startTimer() {
-        ScheduledTask schedule = TaskManager.INSTANCE.schedule(this::timeOut, Config.getTeleportTimeout());
+        ScheduledTask schedule = TaskManager.INSTANCE.schedule(this::timeOut, Config.getTeleportTimeout(), TaskPriority.LOW);
         this.timeoutToken = schedule.token();
     }
 